@@ -0,0 +1,264 @@
+package Project.Bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Minimal micro-benchmark harness (no external dependencies, the project is
+ * built with plain javac).
+ * <p>
+ * Each case runs a number of warmup rounds so the JIT settles, then timed
+ * rounds; results are reported per operation. Return values are folded into
+ * a sink so the JIT can't eliminate the work being measured.
+ * </p>
+ * <p>
+ * -Dbench.out=file saves the results as CSV and -Dbench.baseline=file prints
+ * each case's change against a previously saved run.
+ * </p>
+ */
+public class Bench {
+    /**
+     * Something to measure; one call is one operation
+     */
+    @FunctionalInterface
+    public interface Operation {
+        Object run(int iteration) throws Exception;
+    }
+
+    /**
+     * Timing of one case
+     */
+    public static class Result {
+        private final String name;
+        private final double nanosPerOp;
+        private final double minNanosPerOp;
+        private final double maxNanosPerOp;
+
+        Result(String name, double nanosPerOp, double minNanosPerOp, double maxNanosPerOp) {
+            this.name = name;
+            this.nanosPerOp = nanosPerOp;
+            this.minNanosPerOp = minNanosPerOp;
+            this.maxNanosPerOp = maxNanosPerOp;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getNanosPerOp() {
+            return nanosPerOp;
+        }
+
+        public double getOpsPerSecond() {
+            return nanosPerOp == 0 ? 0 : 1_000_000_000d / nanosPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-52s %12.1f ns/op %14.0f ops/s  (min %.1f, max %.1f)", name,
+                    nanosPerOp, getOpsPerSecond(), minNanosPerOp, maxNanosPerOp);
+        }
+    }
+
+    private final int warmupRounds;
+    private final int measuredRounds;
+    private final int opsPerRound;
+    private final List<Result> results = new ArrayList<>();
+    private final Map<String, Double> baseline = new HashMap<>();
+    private String filter;
+    private long sink;
+
+    /**
+     * @param warmupRounds   untimed rounds before measuring
+     * @param measuredRounds timed rounds (the mean is reported)
+     * @param opsPerRound    operations per round
+     */
+    public Bench(int warmupRounds, int measuredRounds, int opsPerRound) {
+        this.warmupRounds = warmupRounds;
+        this.measuredRounds = measuredRounds;
+        this.opsPerRound = opsPerRound;
+    }
+
+    /**
+     * 5 warmup and 10 measured rounds of 20,000 ops unless overridden by
+     * -Dbench.warmup, -Dbench.rounds and -Dbench.ops; -Dbench.quick=true
+     * shortens everything for a smoke run
+     */
+    public static Bench fromSystemProperties() {
+        Bench bench = Boolean.getBoolean("bench.quick") ? new Bench(2, 3, 1_000)
+                : new Bench(Integer.getInteger("bench.warmup", 5), Integer.getInteger("bench.rounds", 10),
+                        Integer.getInteger("bench.ops", 20_000));
+        String baselineFile = System.getProperty("bench.baseline");
+        if (baselineFile != null) {
+            try {
+                bench.loadBaseline(Paths.get(baselineFile));
+            } catch (IOException e) {
+                System.out.println("Could not read baseline " + baselineFile + ": " + e.getMessage());
+            }
+        }
+        return bench;
+    }
+
+    /**
+     * Only runs cases whose name contains the filter (case insensitive)
+     *
+     * @param filter null or empty runs everything
+     */
+    public void setFilter(String filter) {
+        this.filter = filter == null || filter.isBlank() ? null : filter.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @param name a case name
+     * @return true if the filter lets it run
+     */
+    public boolean isSelected(String name) {
+        return filter == null || name.toLowerCase(Locale.ROOT).contains(filter);
+    }
+
+    /**
+     * @return a smaller op count for heavy cases, never below 1
+     */
+    public int scaledOps(int divisor) {
+        return Math.max(1, opsPerRound / Math.max(1, divisor));
+    }
+
+    /**
+     * Runs and prints one case
+     *
+     * @param name      label in the report
+     * @param operation the work
+     * @return the timing
+     * @throws Exception whatever the operation throws
+     */
+    public Result run(String name, Operation operation) throws Exception {
+        return run(name, opsPerRound, operation);
+    }
+
+    /**
+     * Same as {@link #run(String, Operation)} with a case-specific op count
+     * (for operations much heavier than the default expects)
+     */
+    public Result run(String name, int ops, Operation operation) throws Exception {
+        if (!isSelected(name)) {
+            return null;
+        }
+        for (int round = 0; round < warmupRounds; round++) {
+            round(ops, operation);
+        }
+        double total = 0;
+        double min = Double.MAX_VALUE;
+        double max = 0;
+        for (int round = 0; round < measuredRounds; round++) {
+            double perOp = (double) round(ops, operation) / ops;
+            total += perOp;
+            min = Math.min(min, perOp);
+            max = Math.max(max, perOp);
+        }
+        Result result = new Result(name, total / measuredRounds, min, max);
+        results.add(result);
+        Double previous = baseline.get(csvName(name));
+        if (previous == null) {
+            System.out.println(result);
+        } else {
+            System.out.println(String.format(Locale.ROOT, "%s  [%+.1f%% vs baseline]", result,
+                    (result.getNanosPerOp() - previous) / previous * 100));
+        }
+        return result;
+    }
+
+    private long round(int ops, Operation operation) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < ops; i++) {
+            consume(operation.run(i));
+        }
+        return System.nanoTime() - start;
+    }
+
+    private void consume(Object value) {
+        sink += value == null ? 1 : System.identityHashCode(value);
+    }
+
+    public List<Result> getResults() {
+        return results;
+    }
+
+    /**
+     * Prints how much faster (or slower) the candidate is than the baseline
+     */
+    public static void compare(Result baseline, Result candidate) {
+        if (baseline == null || candidate == null) {
+            return; // filtered out
+        }
+        System.out.println(String.format(Locale.ROOT, "%s vs %s: %.2fx", candidate.getName(), baseline.getName(),
+                baseline.getNanosPerOp() / candidate.getNanosPerOp()));
+    }
+
+    /**
+     * Writes every result so far as "name,nanosPerOp" lines
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void saveResults(Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("name,nanosPerOp");
+        for (Result result : results) {
+            lines.add(String.format(Locale.ROOT, "%s,%.3f", csvName(result.getName()), result.getNanosPerOp()));
+        }
+        Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+
+    private static String csvName(String name) {
+        return name.replace(',', ';');
+    }
+
+    /**
+     * Reads a file written by {@link #saveResults(Path)} to compare against
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void loadBaseline(Path file) throws IOException {
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            int comma = line.lastIndexOf(',');
+            if (comma <= 0 || line.startsWith("name,")) {
+                continue;
+            }
+            try {
+                baseline.put(line.substring(0, comma), Double.parseDouble(line.substring(comma + 1)));
+            } catch (NumberFormatException e) {
+                // skip malformed lines
+            }
+        }
+    }
+
+    /**
+     * Saves to -Dbench.out if set and prints the sink
+     *
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        String out = System.getProperty("bench.out");
+        if (out != null) {
+            saveResults(Paths.get(out));
+            System.out.println("Saved " + results.size() + " results to " + out);
+        }
+        System.out.println("sink " + sink);
+    }
+
+    /**
+     * @return the folded results; print it (or ignore it) so the sink stays live
+     */
+    public long getSink() {
+        return sink;
+    }
+}
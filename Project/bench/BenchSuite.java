@@ -0,0 +1,46 @@
+package Project.Bench;
+
+import java.util.logging.Level;
+
+import Project.Common.LoggerUtil;
+
+/**
+ * Runs every benchmark: payload codecs, text formatting, room fan-out, room
+ * listing and mute lookups.
+ * <p>
+ * Run with: java Project.Bench.BenchSuite [filter] where filter picks cases by
+ * name (e.g. "codec", "fan-out", "listRooms"). Save a baseline with
+ * -Dbench.out=baseline.csv and compare later runs with
+ * -Dbench.baseline=baseline.csv; -Dbench.quick=true is a fast smoke run.
+ * </p>
+ */
+public class BenchSuite {
+
+    /**
+     * Keeps the server code quiet while benchmarking (warnings only, written
+     * off-thread to bench.log)
+     */
+    static void configureLogging() {
+        LoggerUtil.LoggerConfig config = new LoggerUtil.LoggerConfig();
+        config.setFileSizeLimit(2048 * 1024); // 2MB
+        config.setFileCount(1);
+        config.setLogLocation("bench.log");
+        config.setFileLogLevel(Level.WARNING);
+        config.setConsoleLogLevel(Level.WARNING);
+        config.setAsync(true);
+        LoggerUtil.INSTANCE.setConfig(config);
+    }
+
+    public static void main(String[] args) throws Exception {
+        configureLogging();
+        Bench bench = Bench.fromSystemProperties();
+        bench.setFilter(args.length > 0 ? args[0] : null);
+        if (bench.isSelected("format") && !TextFormattingBench.verifyAll()) {
+            System.exit(1);
+        }
+        CodecBench.run(bench);
+        TextFormattingBench.run(bench);
+        ServerBench.run(bench);
+        bench.finish();
+    }
+}
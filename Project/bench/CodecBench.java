@@ -0,0 +1,106 @@
+package Project.Bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import Project.Common.BinaryCodec;
+import Project.Common.ConnectionPayload;
+import Project.Common.FrameCodec;
+import Project.Common.Payload;
+import Project.Common.PayloadType;
+import Project.Common.PresenceDeltaPayload;
+import Project.Common.RollPayload;
+import Project.Common.RoomResultsPayload;
+import Project.Common.RoomRosterPayload;
+
+/**
+ * Encode and decode of every Payload subclass, under Java serialization (the
+ * legacy wire format) and, where the payload supports it, BinaryCodec.
+ * <p>
+ * Run with: java Project.Bench.CodecBench (or as part of BenchSuite)
+ * </p>
+ */
+public class CodecBench {
+
+    /**
+     * One representative instance of each Payload class, sized like real
+     * traffic
+     */
+    static List<Payload> samples() {
+        List<Payload> samples = new ArrayList<>();
+
+        Payload message = new Payload();
+        message.setPayloadType(PayloadType.MESSAGE);
+        message.setClientId(42);
+        message.setMessage("hey everyone, anyone up for a <b>game</b> later?");
+        samples.add(message);
+
+        ConnectionPayload connect = new ConnectionPayload();
+        connect.setPayloadType(PayloadType.CLIENT_ID);
+        connect.setClientId(42);
+        connect.setClientName("alice");
+        connect.setConnect(true);
+        connect.setWireVersion(BinaryCodec.VERSION);
+        samples.add(connect);
+
+        RollPayload roll = new RollPayload();
+        roll.setQuantity(2);
+        roll.setSides(20);
+        samples.add(roll);
+
+        RoomResultsPayload rooms = new RoomResultsPayload();
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            names.add("room-" + i);
+        }
+        rooms.setRooms(names);
+        samples.add(rooms);
+
+        long[] ids = new long[50];
+        String[] clientNames = new String[50];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i + 1;
+            clientNames[i] = "user" + i;
+        }
+        RoomRosterPayload roster = new RoomRosterPayload();
+        roster.setMessage("lobby");
+        roster.setClients(ids, clientNames);
+        samples.add(roster);
+
+        PresenceDeltaPayload delta = new PresenceDeltaPayload();
+        delta.setMessage("lobby");
+        delta.setJoined(new long[] { 51, 52, 53 }, new String[] { "user51", "user52", "user53" });
+        delta.setLeft(new long[] { 7 }, new String[] { "user7" });
+        samples.add(delta);
+        return samples;
+    }
+
+    static void run(Bench bench) throws Exception {
+        for (Payload payload : samples()) {
+            String type = payload.getClass().getSimpleName();
+            byte[] legacy = FrameCodec.encode(payload, FrameCodec.LEGACY_VERSION);
+            int legacyLength = legacy.length - FrameCodec.HEADER_SIZE;
+            bench.run(String.format("codec %s serialization encode (%sB)", type, legacy.length),
+                    i -> FrameCodec.encode(payload, FrameCodec.LEGACY_VERSION));
+            bench.run(String.format("codec %s serialization decode", type),
+                    i -> FrameCodec.decode(legacy, FrameCodec.HEADER_SIZE, legacyLength));
+            if (!BinaryCodec.supports(payload)) {
+                continue;
+            }
+            byte[] binary = FrameCodec.encode(payload, BinaryCodec.VERSION);
+            int binaryLength = binary.length - FrameCodec.HEADER_SIZE;
+            bench.run(String.format("codec %s binary encode (%sB)", type, binary.length),
+                    i -> FrameCodec.encode(payload, BinaryCodec.VERSION));
+            bench.run(String.format("codec %s binary decode", type),
+                    i -> FrameCodec.decode(binary, FrameCodec.HEADER_SIZE, binaryLength));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        BenchSuite.configureLogging();
+        Bench bench = Bench.fromSystemProperties();
+        bench.setFilter(args.length > 0 ? args[0] : null);
+        run(bench);
+        bench.finish();
+    }
+}
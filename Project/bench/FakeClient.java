@@ -0,0 +1,29 @@
+package Project.Bench;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import Project.Common.BinaryCodec;
+import Project.Server.ServerThread;
+
+/**
+ * ServerThread backed by a {@link FakeConnection}. It starts inactive, which
+ * makes every send a no-op, so rooms can be filled without paying for the
+ * join announcements; activate it before measuring.
+ */
+public class FakeClient extends ServerThread {
+
+    /**
+     * @param clientId must be unique within a room
+     * @param frames   counts frames written to this client
+     */
+    public FakeClient(long clientId, AtomicLong frames) {
+        super(new FakeConnection(frames), client -> {
+        });
+        wireVersion = BinaryCodec.VERSION;
+        sendClientId(clientId); // only sets the id while inactive
+    }
+
+    public void setActive(boolean isActive) {
+        isRunning = isActive;
+    }
+}
@@ -0,0 +1,48 @@
+package Project.Bench;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import Project.Common.PayloadType;
+import Project.Server.ClientConnection;
+import Project.Server.OutboundQueue;
+
+/**
+ * In-memory ClientConnection that only counts what it's handed, so server
+ * code can be benchmarked without sockets
+ */
+public class FakeConnection implements ClientConnection {
+    private final AtomicLong frames; // may be shared by many connections
+    private final OutboundQueue queue = new OutboundQueue();
+
+    /**
+     * @param frames incremented for every frame written
+     */
+    public FakeConnection(AtomicLong frames) {
+        this.frames = frames;
+    }
+
+    @Override
+    public boolean write(byte[] frame, PayloadType type) {
+        frames.incrementAndGet();
+        return true;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return 0;
+    }
+
+    @Override
+    public OutboundQueue getQueue() {
+        return queue;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+    }
+}
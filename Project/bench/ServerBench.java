@@ -0,0 +1,172 @@
+package Project.Bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import Project.Server.MuteListStore;
+import Project.Server.Room;
+import Project.Server.ServerThread;
+
+/**
+ * Server hot paths driven through the same Room entry points a ServerThread
+ * uses, with in-memory {@link FakeClient}s instead of sockets:
+ * <ul>
+ * <li>Room.sendMessage fan-out to 10 up to 10,000 members (one op is one
+ * message, timed until the last member's connection has it)</li>
+ * <li>Server.listRooms (via Room.handleListRooms) with 10,000 rooms</li>
+ * <li>ServerThread.isUserMuted against small and large mute lists</li>
+ * </ul>
+ * Run with: java Project.Bench.ServerBench (or as part of BenchSuite)
+ */
+public class ServerBench {
+    private static final int[] FAN_OUT_SIZES = { 10, 100, 1_000, 10_000 };
+    private static final int ROOM_COUNT = 10_000;
+
+    /**
+     * Gives the bench the protected entry points ServerThread calls
+     */
+    private static class BenchRoom extends Room {
+        BenchRoom(String name) {
+            super(name);
+        }
+
+        void join(ServerThread client) {
+            addClient(client);
+        }
+
+        void send(ServerThread sender, String message) {
+            sendMessage(sender, message);
+        }
+
+        void listRooms(ServerThread sender, String query) {
+            handleListRooms(sender, query);
+        }
+
+        void create(ServerThread sender, String room) {
+            handleCreateRoom(sender, room);
+        }
+    }
+
+    /**
+     * Waits for the room's mailbox to apply every join
+     */
+    private static void awaitMembers(Room room, int members) throws InterruptedException {
+        while (room.getMemberCount() < members || room.getPendingTaskCount() > 0) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(50); // let the last task finish its announcements
+    }
+
+    static void fanOut(Bench bench, int members) throws Exception {
+        String name = String.format("fan-out %s members", members);
+        if (!bench.isSelected(name)) {
+            return;
+        }
+        AtomicLong frames = new AtomicLong();
+        BenchRoom room = new BenchRoom("bench-" + members);
+        FakeClient[] clients = new FakeClient[members];
+        for (int i = 0; i < members; i++) {
+            clients[i] = new FakeClient(i + 1, frames);
+            room.join(clients[i]);
+        }
+        awaitMembers(room, members);
+        for (FakeClient client : clients) {
+            client.setActive(true);
+        }
+        FakeClient sender = clients[0];
+        bench.run(name, bench.scaledOps(members / 10), i -> {
+            long target = frames.get() + members;
+            room.send(sender, "hey everyone, anyone up for a game later?");
+            while (frames.get() < target) {
+                Thread.onSpinWait();
+            }
+            return target;
+        });
+        for (FakeClient client : clients) {
+            client.setActive(false);
+        }
+        room.close();
+    }
+
+    static void listRooms(Bench bench) throws Exception {
+        if (!bench.isSelected("listRooms")) {
+            return;
+        }
+        AtomicLong frames = new AtomicLong();
+        BenchRoom lobby = new BenchRoom("bench-lobby");
+        // each creator stays in its room so none of them auto-closes
+        for (int i = 0; i < ROOM_COUNT; i++) {
+            lobby.create(new FakeClient(i + 1, frames), "room-" + i);
+        }
+        Thread.sleep(500);
+        FakeClient querier = new FakeClient(ROOM_COUNT + 1, frames);
+        querier.setActive(true);
+        bench.run("listRooms 10k rooms, 1 match", i -> {
+            lobby.listRooms(querier, "room-4242");
+            return null;
+        });
+        bench.run("listRooms 10k rooms, 111 matches", i -> {
+            lobby.listRooms(querier, "room-42");
+            return null;
+        });
+        lobby.close();
+    }
+
+    static void isUserMuted(Bench bench, int entries) throws Exception {
+        String prefix = String.format("isUserMuted %s entries", entries);
+        if (!bench.isSelected(prefix)) {
+            return;
+        }
+        String clientName = "bench-muter-" + entries;
+        List<String> muted = new ArrayList<>();
+        for (int i = 0; i < entries; i++) {
+            muted.add("user" + i);
+            MuteListStore.INSTANCE.mute(clientName, "user" + i);
+        }
+        FakeClient client = new FakeClient(1, new AtomicLong());
+        client.setClientName(clientName); // picks up the mute list
+        String[] hits = muted.toArray(new String[0]);
+        bench.run(prefix + ", hit", i -> client.isUserMuted(hits[i % hits.length]));
+        bench.run(prefix + ", miss", i -> client.isUserMuted("stranger"));
+    }
+
+    /**
+     * Runs the mute benches against a throwaway store directory so they never
+     * touch (or import) the mute lists in the working directory
+     */
+    static void isUserMuted(Bench bench) throws Exception {
+        Path directory = Files.createTempDirectory("bench-mute-lists-");
+        System.setProperty("chat.mutes.dir", directory.toString());
+        try {
+            MuteListStore.INSTANCE.preload().join();
+            isUserMuted(bench, 10);
+            isUserMuted(bench, 1_000);
+        } finally {
+            MuteListStore.INSTANCE.close();
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+
+    static void run(Bench bench) throws Exception {
+        for (int members : FAN_OUT_SIZES) {
+            fanOut(bench, members);
+        }
+        listRooms(bench);
+        isUserMuted(bench);
+    }
+
+    public static void main(String[] args) throws Exception {
+        BenchSuite.configureLogging();
+        Bench bench = Bench.fromSystemProperties();
+        bench.setFilter(args.length > 0 ? args[0] : null);
+        run(bench);
+        bench.finish();
+    }
+}
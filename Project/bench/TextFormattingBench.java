@@ -0,0 +1,195 @@
+package Project.Bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import Project.Server.TextFormatter;
+
+/**
+ * Compares the single pass {@link TextFormatter} with the regex chain Room
+ * used before it.
+ * <p>
+ * Before timing anything it checks both produce the same output for the
+ * sample messages, a few thousand generated well-formed ones and random
+ * strings of marker characters, and exits with status 1 if they don't.
+ * </p>
+ * Run with: java Project.Bench.TextFormattingBench (or as part of BenchSuite)
+ */
+public class TextFormattingBench {
+    private static final String[] SAMPLES = {
+            "hello there, nothing special in this one",
+            "hello **world**",
+            "this is *really* important",
+            "please _read_ the rules",
+            "#rwarning r# and #gok g# and #bnote b#",
+            "#ff8800 orange text# then plain",
+            "**bold with _underline_ and *italic* inside**",
+            "#rred with **bold** inside r# and #00ff00 hex with *italic*#",
+            "mixed **a** *b* _c_ #rd r# #ge g# #bf b# #123abcg#",
+            "unpaired * star and lone _ underscore and # hash",
+            "****",
+            "**a** then *b* then **c**",
+            "line one **bold\nline two** not bold",
+            "snake_case_name and __double__",
+            "#bbbbbb hex that starts with b#",
+            "#rr# empty red",
+    };
+
+    /**
+     * The implementation Room.processTextFormatting had before TextFormatter
+     * (without the ROLL/FLIP check)
+     */
+    static String regexFormat(String message) {
+        // Bold: **text**
+        message = message.replaceAll("\\*\\*(.*?)\\*\\*", "<b>$1</b>");
+        // Italic: *text*
+        message = message.replaceAll("\\*(.*?)\\*", "<i>$1</i>");
+        // Underline: __text__
+        message = message.replaceAll("_(.*?)_", "<u>$1</u>");
+        // Colors
+        message = message.replaceAll("#r(.*?)r#", "<font color='red'>$1</font>");
+        message = message.replaceAll("#g(.*?)g#", "<font color='green'>$1</font>");
+        message = message.replaceAll("#b(.*?)b#", "<font color='blue'>$1</font>");
+        // Hex color: #[0-9A-Fa-f]{6}(.*?)#
+        message = message.replaceAll("#([0-9A-Fa-f]{6})(.*?)#", "<font color='#$1'>$2</font>");
+        return message;
+    }
+
+    /**
+     * Builds a random message with properly nested markup (a marker type is
+     * never nested inside itself, the regex couldn't pair that either)
+     */
+    static String generate(Random random, int depth, boolean[] active) {
+        StringBuilder sb = new StringBuilder();
+        int parts = 1 + random.nextInt(4);
+        for (int p = 0; p < parts; p++) {
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+            int type = random.nextInt(7);
+            if (depth < 3 && random.nextInt(3) == 0 && !active[type]) {
+                active[type] = true;
+                String inner = generate(random, depth + 1, active);
+                active[type] = false;
+                switch (type) {
+                    case 0:
+                        sb.append("**").append(inner).append("**");
+                        break;
+                    case 1:
+                        sb.append('*').append(inner).append('*');
+                        break;
+                    case 2:
+                        sb.append('_').append(inner).append('_');
+                        break;
+                    case 3:
+                        sb.append("#r").append(inner).append("r#");
+                        break;
+                    case 4:
+                        sb.append("#g").append(inner).append("g#");
+                        break;
+                    case 5:
+                        sb.append("#b").append(inner).append("b#");
+                        break;
+                    default:
+                        sb.append(String.format("#%06x", random.nextInt(0x1000000))).append(inner).append('#');
+                        break;
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static final String[] WORDS = { "hello ", "world ", "chat ", "room ", "abc ", "x", " ", "1234 " };
+
+    /**
+     * @return number of inputs where the two implementations disagree
+     */
+    static int verify(List<String> inputs) {
+        int mismatches = 0;
+        for (String input : inputs) {
+            String expected = regexFormat(input);
+            String actual = TextFormatter.format(input);
+            if (!expected.equals(actual)) {
+                mismatches++;
+                if (mismatches <= 10) {
+                    System.out.println("MISMATCH for: " + input);
+                    System.out.println("  regex:       " + expected);
+                    System.out.println("  single pass: " + actual);
+                }
+            }
+        }
+        return mismatches;
+    }
+
+    /**
+     * A realistic mix of 100 messages: mostly plain chat, some light markup and
+     * a few heavily formatted ones
+     */
+    static String[] messageMix() {
+        Random random = new Random(7);
+        String[] mix = new String[100];
+        for (int i = 0; i < mix.length; i++) {
+            if (i % 10 < 7) {
+                mix[i] = SAMPLES[0] + " " + i;
+            } else if (i % 10 < 9) {
+                mix[i] = SAMPLES[1 + random.nextInt(4)];
+            } else {
+                mix[i] = generate(random, 0, new boolean[7]);
+            }
+        }
+        return mix;
+    }
+
+    /**
+     * Checks the formatter against the regex chain
+     *
+     * @return false if they disagree on anything
+     */
+    static boolean verifyAll() {
+        List<String> inputs = new ArrayList<>(List.of(SAMPLES));
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            inputs.add(generate(random, 0, new boolean[7]));
+        }
+        String alphabet = "**_#rgbf0a1 x\n";
+        for (int i = 0; i < 20000; i++) {
+            char[] chars = new char[random.nextInt(20)];
+            for (int c = 0; c < chars.length; c++) {
+                chars[c] = alphabet.charAt(random.nextInt(alphabet.length()));
+            }
+            inputs.add(new String(chars));
+        }
+        int mismatches = verify(inputs);
+        System.out.println(String.format("Checked %s messages, %s mismatches", inputs.size(), mismatches));
+        return mismatches == 0;
+    }
+
+    /**
+     * Runs the formatting cases
+     *
+     * @param bench
+     * @throws Exception
+     */
+    static void run(Bench bench) throws Exception {
+        String plain = SAMPLES[0];
+        String typical = SAMPLES[1];
+        String heavy = SAMPLES[8];
+        String[] mix = messageMix();
+        Bench.compare(bench.run("format regex plain", i -> regexFormat(plain)),
+                bench.run("format single pass plain", i -> TextFormatter.format(plain)));
+        Bench.compare(bench.run("format regex typical", i -> regexFormat(typical)),
+                bench.run("format single pass typical", i -> TextFormatter.format(typical)));
+        Bench.compare(bench.run("format regex heavy", i -> regexFormat(heavy)),
+                bench.run("format single pass heavy", i -> TextFormatter.format(heavy)));
+        Bench.compare(bench.run("format regex mix", i -> regexFormat(mix[i % mix.length])),
+                bench.run("format single pass mix", i -> TextFormatter.format(mix[i % mix.length])));
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (!verifyAll()) {
+            System.exit(1);
+        }
+        Bench bench = Bench.fromSystemProperties();
+        run(bench);
+        bench.finish();
+    }
+}
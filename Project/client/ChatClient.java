@@ -0,0 +1,605 @@
+package Project.Client;
+
+import Project.Client.Interfaces.IClientEvents;
+import Project.Client.Interfaces.IConnectionEvents;
+import Project.Client.Interfaces.IMessageEvents;
+import Project.Client.Interfaces.IMuteEvents;
+import Project.Client.Interfaces.IRoomEvents;
+import Project.Common.ConnectionPayload;
+import Project.Common.FrameCodec;
+import Project.Common.LoggerUtil;
+import Project.Common.Payload;
+import Project.Common.PayloadType;
+import Project.Common.PresenceDeltaPayload;
+import Project.Common.RollPayload;
+import Project.Common.RoomResultsPayload;
+import Project.Common.RoomRosterPayload;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * One chat session: a connection to the server, the clients known in the
+ * current room and the listeners that get its events.
+ * <p>
+ * Any number of sessions can live in one process (Client/ClientUI use one, a
+ * bot or bridge can hold hundreds). Each session's reader is a virtual thread
+ * and sends are queued per session onto a shared virtual-thread executor, so
+ * idle sessions don't hold platform threads.
+ * </p>
+ */
+public class ChatClient {
+    // virtual threads, so a slow socket only parks its own send
+    private static final ExecutorService SENDERS = Executors.newVirtualThreadPerTaskExecutor();
+    private static final AtomicLong nextSessionId = new AtomicLong(1);
+
+    private final long sessionId = nextSessionId.getAndIncrement();
+    private final List<IClientEvents> listeners = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<Long, ClientData> knownClients = new ConcurrentHashMap<>();
+    // lower-cased name -> the clients using it, oldest first (names aren't
+    // unique, but there's nearly always one), kept next to knownClients for
+    // @name and /mute; the lists are replaced, never modified
+    private final ConcurrentHashMap<String, List<ClientData>> knownClientsByName = new ConcurrentHashMap<>();
+    private final ClientData myData = new ClientData();
+    // ReentrantLock rather than synchronized so a blocked write doesn't pin the
+    // carrier thread
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Object sendOrder = new Object();
+    private CompletableFuture<Void> lastSend = CompletableFuture.completedFuture(null); // guarded by sendOrder
+    private volatile Connection connection; // null while disconnected
+    // legacy Java serialization until the server confirms a newer version in
+    // CLIENT_ID
+    private volatile byte wireVersion = FrameCodec.LEGACY_VERSION;
+
+    /**
+     * One socket and what belongs to it. Each reader only ever closes its own,
+     * so an old reader still unwinding after close() can't touch the
+     * connection a reconnect just opened.
+     */
+    private static final class Connection {
+        final Socket server;
+        final DataOutputStream out;
+        final DataInputStream in;
+        final CompletableFuture<Long> clientIdFuture = new CompletableFuture<>();
+        volatile boolean isRunning = true; // false once closed on purpose
+
+        Connection(Socket server) throws IOException {
+            this.server = server;
+            // channel to send to server (payloads are length-prefixed frames)
+            out = new DataOutputStream(new BufferedOutputStream(server.getOutputStream()));
+            // channel to listen to server
+            in = new DataInputStream(new BufferedInputStream(server.getInputStream()));
+        }
+
+        boolean isConnected() {
+            // Note: these check the client's end of the socket connect; therefore they
+            // don't really help determine if the server had a problem
+            return server.isConnected() && !server.isClosed() && !server.isInputShutdown()
+                    && !server.isOutputShutdown();
+        }
+
+        void close() {
+            isRunning = false;
+            clientIdFuture.completeExceptionally(new IOException("Disconnected before receiving an id"));
+            try {
+                out.close();
+            } catch (Exception e) {
+                LoggerUtil.INSTANCE.info("Error closing output stream", e);
+            }
+            try {
+                in.close();
+            } catch (Exception e) {
+                LoggerUtil.INSTANCE.info("Error closing input stream", e);
+            }
+            try {
+                server.close();
+            } catch (IOException e) {
+                LoggerUtil.INSTANCE.info("Error closing socket", e);
+            }
+        }
+    }
+
+    public ChatClient() {
+        myData.reset();
+    }
+
+    /**
+     * Registers a listener; it receives the callbacks of every event interface
+     * it implements (IConnectionEvents, IMessageEvents, IRoomEvents,
+     * IMuteEvents). Callbacks run on the session's reader thread.
+     *
+     * @param listener
+     */
+    public void addListener(IClientEvents listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(IClientEvents listener) {
+        listeners.remove(listener);
+    }
+
+    public boolean isConnected() {
+        Connection conn = connection;
+        return conn != null && conn.isConnected();
+    }
+
+    /**
+     * Opens the socket, starts the reader and sends our name.
+     *
+     * @param address
+     * @param port
+     * @param username
+     * @return completes with the server-given id once CLIENT_ID arrives, or
+     *         exceptionally if the connection drops first
+     * @throws IOException if the socket couldn't be opened
+     */
+    public CompletableFuture<Long> connect(String address, int port, String username) throws IOException {
+        if (isConnected()) {
+            throw new IOException("Already connected");
+        }
+        Socket server = new Socket(address, port);
+        server.setTcpNoDelay(true);
+        Connection conn;
+        try {
+            conn = new Connection(server);
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+        Connection previous = connection;
+        if (previous != null) {
+            closeConnection(previous); // dropped without close(), clear what it left
+        }
+        myData.setClientName(username);
+        connection = conn;
+        LoggerUtil.INSTANCE.info(() -> String.format("Session %s connected", sessionId));
+        Thread.ofVirtual().name("chat-client-" + sessionId).start(() -> listenToServer(conn));
+        ConnectionPayload cp = new ConnectionPayload();
+        cp.setClientName(username);
+        cp.setWireVersion(FrameCodec.CURRENT_VERSION); // advertise the binary codec
+        send(cp);
+        return conn.clientIdFuture;
+    }
+
+    public long getMyClientId() {
+        return myData.getClientId();
+    }
+
+    public String getMyClientName() {
+        return myData.getClientName();
+    }
+
+    /**
+     * Returns the ClientName of a specific Client by ID.
+     *
+     * @param id
+     * @return the name, or Room if id is -1, or [Unknown] if failed to find
+     */
+    public String getClientNameFromId(long id) {
+        if (id == ClientData.DEFAULT_CLIENT_ID) {
+            return "Room";
+        }
+        ClientData cd = knownClients.get(id);
+        return cd != null ? cd.getClientName() : "[Unknown]";
+    }
+
+    /**
+     * @param username
+     * @return the id of a client in our room with that name (ignoring case) or
+     *         -1
+     */
+    public long findClientIdByUsername(String username) {
+        List<ClientData> named = knownClientsByName.get(nameKey(username));
+        return named != null ? named.get(0).getClientId() : ClientData.DEFAULT_CLIENT_ID;
+    }
+
+    private static String nameKey(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return false if the client was already known
+     */
+    private boolean addKnownClient(ClientData cd) {
+        if (knownClients.putIfAbsent(cd.getClientId(), cd) != null) {
+            return false;
+        }
+        knownClientsByName.merge(nameKey(cd.getClientName()), List.of(cd), (named, added) -> {
+            List<ClientData> both = new ArrayList<>(named);
+            both.addAll(added);
+            return List.copyOf(both);
+        });
+        return true;
+    }
+
+    /**
+     * @return false if the client wasn't known
+     */
+    private boolean removeKnownClient(long clientId) {
+        ClientData cd = knownClients.remove(clientId);
+        if (cd == null) {
+            return false;
+        }
+        // only a duplicated name leaves anyone behind to point the name at
+        knownClientsByName.computeIfPresent(nameKey(cd.getClientName()), (key, named) -> {
+            if (named.size() == 1) {
+                return named.get(0) == cd ? null : named;
+            }
+            List<ClientData> rest = new ArrayList<>(named);
+            rest.remove(cd);
+            return rest.isEmpty() ? null : List.copyOf(rest);
+        });
+        return true;
+    }
+
+    private void clearKnownClients() {
+        knownClients.clear();
+        knownClientsByName.clear();
+    }
+
+    /**
+     * @return a snapshot of the clients in our current room
+     */
+    public List<ClientData> getKnownClients() {
+        return new ArrayList<>(knownClients.values());
+    }
+
+    // send methods to pass data to the ServerThread
+
+    public CompletableFuture<Void> sendMessage(String message) {
+        Payload p = new Payload();
+        p.setPayloadType(PayloadType.MESSAGE);
+        p.setMessage(message);
+        return send(p);
+    }
+
+    public CompletableFuture<Void> sendPrivateMessage(long targetId, String message) {
+        Payload p = new Payload();
+        p.setPayloadType(PayloadType.PRIVATE_MESSAGE);
+        p.setClientId(targetId);
+        p.setMessage(message);
+        return send(p);
+    }
+
+    /**
+     * Sends a search to the server-side to get a list of potentially matching
+     * Rooms
+     *
+     * @param roomQuery optional partial match search String
+     */
+    public CompletableFuture<Void> sendListRooms(String roomQuery) {
+        Payload p = new Payload();
+        p.setPayloadType(PayloadType.ROOM_LIST);
+        p.setMessage(roomQuery);
+        return send(p);
+    }
+
+    public CompletableFuture<Void> sendCreateRoom(String room) {
+        Payload p = new Payload();
+        p.setPayloadType(PayloadType.ROOM_CREATE);
+        p.setMessage(room);
+        return send(p);
+    }
+
+    public CompletableFuture<Void> sendJoinRoom(String room) {
+        Payload p = new Payload();
+        p.setPayloadType(PayloadType.ROOM_JOIN);
+        p.setMessage(room);
+        return send(p);
+    }
+
+    /**
+     * Tells the server-side we want to disconnect
+     */
+    public CompletableFuture<Void> sendDisconnect() {
+        Payload p = new Payload();
+        p.setPayloadType(PayloadType.DISCONNECT);
+        return send(p);
+    }
+
+    /**
+     * @param quantity     number of dice (1 for a simple roll)
+     * @param sides        sides per die, or the max for a simple roll
+     * @param isSimpleRoll true for "/roll 6" style 1 to max rolls
+     */
+    public CompletableFuture<Void> sendRoll(int quantity, int sides, boolean isSimpleRoll) {
+        RollPayload payload = new RollPayload();
+        payload.setClientId(getMyClientId());
+        payload.setSimpleRoll(isSimpleRoll);
+        payload.setQuantity(quantity);
+        payload.setSides(sides);
+        return send(payload);
+    }
+
+    public CompletableFuture<Void> sendFlip() {
+        Payload payload = new Payload();
+        payload.setPayloadType(PayloadType.FLIP);
+        payload.setClientId(getMyClientId());
+        return send(payload);
+    }
+
+    public CompletableFuture<Void> sendMute(long targetId, boolean isMute) {
+        Payload p = new Payload();
+        p.setPayloadType(isMute ? PayloadType.MUTE : PayloadType.UNMUTE);
+        p.setClientId(targetId);
+        return send(p);
+    }
+
+    /**
+     * Queues any Payload for the socket (to ServerThread). Sends from one
+     * session go out in call order.
+     *
+     * @param p
+     * @return completes once the frame is written, or exceptionally with the
+     *         IOException
+     */
+    public CompletableFuture<Void> send(Payload p) {
+        synchronized (sendOrder) {
+            // run after the previous send whether it failed or not
+            CompletableFuture<Void> next = lastSend.handle((ignored, error) -> null)
+                    .thenRunAsync(() -> write(p), SENDERS);
+            lastSend = next;
+            return next;
+        }
+    }
+
+    private void write(Payload p) {
+        Connection conn = connection;
+        if (conn == null) {
+            throw new CompletionException(new IOException("Not connected"));
+        }
+        LoggerUtil.INSTANCE.fine(() -> "Sending Payload: " + p);
+        writeLock.lock();
+        try {
+            FrameCodec.writeFrame(conn.out, p, wireVersion);
+        } catch (IOException e) {
+            LoggerUtil.INSTANCE.severe("Socket send exception", e);
+            throw new CompletionException(e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    // end send methods
+
+    /**
+     * Listens for messages from the server
+     *
+     * @param conn the connection this reader belongs to
+     */
+    private void listenToServer(Connection conn) {
+        try {
+            // stop as soon as a reconnect replaced this connection
+            while (conn.isRunning && connection == conn && conn.isConnected()) {
+                Payload fromServer = FrameCodec.readFrame(conn.in); // blocking read
+                if (fromServer != null) {
+                    LoggerUtil.INSTANCE.fine(() -> "Received from server: " + fromServer);
+                    processPayload(conn, fromServer);
+                } else {
+                    LoggerUtil.INSTANCE.info("Server disconnected");
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            if (conn.isRunning) {
+                LoggerUtil.INSTANCE.info("Connection dropped", e);
+            }
+        } finally {
+            closeConnection(conn);
+        }
+        LoggerUtil.INSTANCE.info(() -> String.format("Session %s reader stopped", sessionId));
+    }
+
+    /**
+     * Closes the connection; the session can connect again afterwards
+     */
+    public void close() {
+        Connection conn = connection;
+        if (conn != null) {
+            closeConnection(conn);
+        }
+    }
+
+    /**
+     * Closes a connection, and resets the session if it's still the current
+     * one
+     *
+     * @param conn
+     */
+    private void closeConnection(Connection conn) {
+        conn.isRunning = false;
+        boolean isCurrent;
+        synchronized (this) {
+            isCurrent = connection == conn;
+            if (isCurrent) {
+                connection = null;
+            }
+        }
+        if (isCurrent) {
+            myData.reset();
+            clearKnownClients();
+            wireVersion = FrameCodec.LEGACY_VERSION;
+        }
+        conn.close();
+    }
+
+    /**
+     * Invokes the event on every listener implementing that event interface
+     */
+    private <T extends IClientEvents> void fire(Class<T> type, Consumer<T> event) {
+        for (IClientEvents listener : listeners) {
+            if (type.isInstance(listener)) {
+                try {
+                    event.accept(type.cast(listener));
+                } catch (Exception e) {
+                    LoggerUtil.INSTANCE.severe("Listener failed", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles received message from the ServerThread
+     *
+     * @param conn    the connection it arrived on
+     * @param payload
+     */
+    private void processPayload(Connection conn, Payload payload) {
+        try {
+            LoggerUtil.INSTANCE.info(() -> "Received Payload: " + payload);
+            switch (payload.getPayloadType()) {
+                case PayloadType.CLIENT_ID: // get id assigned
+                    ConnectionPayload cp = (ConnectionPayload) payload;
+                    wireVersion = cp.getWireVersion(); // server's choice from the handshake
+                    processClientData(conn, cp.getClientId(), cp.getClientName());
+                    break;
+                case PayloadType.SYNC_CLIENT: // silent add
+                    cp = (ConnectionPayload) payload;
+                    processClientSync(cp.getClientId(), cp.getClientName());
+                    break;
+                case PayloadType.DISCONNECT: // remove a disconnected client (mostly for the specific message vs leaving
+                                             // a room)
+                    cp = (ConnectionPayload) payload;
+                    processDisconnect(conn, cp.getClientId(), cp.getClientName());
+                    // note: we want this to cascade
+                case PayloadType.ROOM_JOIN: // add/remove client info from known clients
+                    cp = (ConnectionPayload) payload;
+                    processRoomAction(cp.getClientId(), cp.getClientName(), cp.getMessage(), cp.isConnect());
+                    break;
+                case PayloadType.ROOM_ROSTER: // silent bulk add
+                    RoomRosterPayload roster = (RoomRosterPayload) payload;
+                    processRoomRoster(roster.getClientIds(), roster.getClientNames());
+                    break;
+                case PayloadType.PRESENCE_DELTA: // batched joins/leaves
+                    PresenceDeltaPayload delta = (PresenceDeltaPayload) payload;
+                    processPresenceDelta(delta);
+                    break;
+                case PayloadType.ROOM_LIST:
+                    RoomResultsPayload rrp = (RoomResultsPayload) payload;
+                    fire(IRoomEvents.class, e -> e.onReceiveRoomList(rrp.getRooms(), rrp.getMessage()));
+                    break;
+                case PayloadType.MESSAGE: // displays a received message
+                    processMessage(payload.getClientId(), payload.getMessage());
+                    break;
+                case MUTE:
+                case UNMUTE:
+                    boolean isMuted = payload.getPayloadType() == PayloadType.MUTE;
+                    fire(IMuteEvents.class, e -> e.onMuteStatusChange(payload.getClientId(), isMuted));
+                    break;
+                default:
+                    break;
+            }
+        } catch (Exception e) {
+            LoggerUtil.INSTANCE.severe("Could not process Payload: " + payload, e);
+        }
+    }
+
+    // payload processors
+    private void processDisconnect(Connection conn, long clientId, String clientName) {
+        fire(IConnectionEvents.class, e -> e.onClientDisconnect(clientId, clientName));
+        if (clientId == myData.getClientId()) {
+            closeConnection(conn);
+        }
+    }
+
+    private void processClientData(Connection conn, long clientId, String clientName) {
+        if (myData.getClientId() == ClientData.DEFAULT_CLIENT_ID) {
+            myData.setClientId(clientId);
+            myData.setClientName(clientName);
+            fire(IConnectionEvents.class, e -> e.onReceiveClientId(clientId));
+            conn.clientIdFuture.complete(clientId);
+        }
+    }
+
+    private void processMessage(long clientId, String message) {
+        // Remove console color codes
+        String text = message.replaceAll("\u001B\\[\\d+m", "");
+        // Convert TextFX color to HTML
+        if (text.startsWith("ROLL:") || text.startsWith("FLIP:")) {
+            text = "<font color='purple'>" + text.substring(text.indexOf(":") + 1).trim() + "</font>";
+        }
+        String received = text;
+        fire(IMessageEvents.class, e -> e.onMessageReceive(clientId, received));
+    }
+
+    private void processClientSync(long clientId, String clientName) {
+        ClientData cd = new ClientData();
+        cd.setClientId(clientId);
+        cd.setClientName(clientName);
+        if (addKnownClient(cd)) {
+            fire(IConnectionEvents.class, e -> e.onSyncClient(clientId, clientName));
+        }
+    }
+
+    private void processRoomRoster(long[] clientIds, String[] clientNames) {
+        // only pass on the members we didn't know about yet
+        long[] ids = new long[clientIds.length];
+        String[] names = new String[clientIds.length];
+        int added = 0;
+        for (int i = 0; i < clientIds.length; i++) {
+            ClientData cd = new ClientData();
+            cd.setClientId(clientIds[i]);
+            cd.setClientName(clientNames[i]);
+            if (addKnownClient(cd)) {
+                ids[added] = clientIds[i];
+                names[added] = clientNames[i];
+                added++;
+            }
+        }
+        if (added > 0) {
+            long[] addedIds = Arrays.copyOf(ids, added);
+            String[] addedNames = Arrays.copyOf(names, added);
+            fire(IConnectionEvents.class, e -> e.onSyncClients(addedIds, addedNames));
+        }
+    }
+
+    private void processPresenceDelta(PresenceDeltaPayload delta) {
+        // leaves first; an id is never in both lists
+        long[] ids = delta.getLeftIds();
+        String[] names = delta.getLeftNames();
+        for (int i = 0; i < ids.length; i++) {
+            processRoomAction(ids[i], names[i], delta.getMessage(), false);
+        }
+        ids = delta.getJoinedIds();
+        names = delta.getJoinedNames();
+        for (int i = 0; i < ids.length; i++) {
+            processRoomAction(ids[i], names[i], delta.getMessage(), true);
+        }
+    }
+
+    private void processRoomAction(long clientId, String clientName, String roomName, boolean isJoin) {
+        if (isJoin) {
+            ClientData cd = new ClientData();
+            cd.setClientId(clientId);
+            cd.setClientName(clientName);
+            if (addKnownClient(cd)) {
+                fire(IRoomEvents.class, e -> e.onRoomAction(clientId, clientName, roomName, true));
+            }
+        } else {
+            if (removeKnownClient(clientId)) {
+                fire(IRoomEvents.class, e -> e.onRoomAction(clientId, clientName, roomName, false));
+            }
+            // clear our list
+            if (clientId == myData.getClientId()) {
+                clearKnownClients();
+                fire(IConnectionEvents.class, IConnectionEvents::onResetUserList);
+            }
+        }
+    }
+    // end payload processors
+}
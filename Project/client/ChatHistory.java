@@ -0,0 +1,239 @@
+package Project.Client;
+
+import Project.Common.LoggerUtil;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Client-side chat history with a bounded memory footprint.
+ * <p>
+ * The newest entries live in an in-memory ring. Older ones spill to an
+ * append-only file as [4-byte length][UTF-8 bytes] records. They're read back
+ * a page at a time (page offsets are indexed, one long per page) through a
+ * small LRU of pages, so scrolling back doesn't load the whole file. Memory
+ * stays the same however long the session runs.
+ * </p>
+ * Entries are addressed by their position since the store was created. If
+ * the file can't be written only the window is kept.
+ */
+public class ChatHistory implements Closeable {
+    public static final int DEFAULT_WINDOW = Integer.getInteger("chat.history.window", 2000);
+    public static final int PAGE_SIZE = 256;
+    private static final int CACHED_PAGES = 8;
+
+    private final Path spillFile; // null when only the window is kept
+    private final String[] window;
+    private int size = 0;
+    private int spilled = 0; // entries [0, spilled) are in the file
+    private long[] pageOffsets = new long[16];
+    private long spillLength = 0;
+    private DataOutputStream spillOut;
+    private RandomAccessFile spillIn;
+    private final Map<Integer, String[]> pageCache = new LinkedHashMap<>(CACHED_PAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, String[]> eldest) {
+            return size() > CACHED_PAGES;
+        }
+    };
+
+    /**
+     * Spills to a temp file that's removed on exit
+     */
+    public ChatHistory() {
+        this(createSpillFile(), DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param spillFile  where entries older than the window go (truncated), null
+     *                   to only keep the window
+     * @param windowSize entries kept in memory
+     */
+    public ChatHistory(Path spillFile, int windowSize) {
+        this.window = new String[Math.max(1, windowSize)];
+        DataOutputStream out = null;
+        if (spillFile != null) {
+            try {
+                out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(spillFile)));
+            } catch (IOException e) {
+                LoggerUtil.INSTANCE.warning("Chat history won't spill to disk, older entries will be dropped", e);
+                spillFile = null;
+            }
+        }
+        this.spillFile = spillFile;
+        this.spillOut = out;
+    }
+
+    private static Path createSpillFile() {
+        try {
+            Path file = Files.createTempFile("chat-history-", ".log");
+            file.toFile().deleteOnExit();
+            return file;
+        } catch (IOException e) {
+            LoggerUtil.INSTANCE.warning("Could not create a chat history file", e);
+            return null;
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int getWindowSize() {
+        return window.length;
+    }
+
+    /**
+     * @return the index of the oldest entry still in memory
+     */
+    public synchronized int getFirstInMemory() {
+        return spilled;
+    }
+
+    /**
+     * Appends an entry, spilling the oldest in-memory one if the window is full
+     *
+     * @param entry
+     */
+    public synchronized void add(String entry) {
+        if (size - spilled == window.length) {
+            spill(window[spilled % window.length]);
+        }
+        window[size % window.length] = entry;
+        size++;
+    }
+
+    private void spill(String entry) {
+        if (spilled % PAGE_SIZE == 0) {
+            int page = spilled / PAGE_SIZE;
+            if (page == pageOffsets.length) {
+                pageOffsets = Arrays.copyOf(pageOffsets, page * 2);
+            }
+            pageOffsets[page] = spillLength;
+        }
+        byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+        if (spillOut != null) {
+            try {
+                spillOut.writeInt(bytes.length);
+                spillOut.write(bytes);
+            } catch (IOException e) {
+                // keep the window going, older entries just can't be paged back in
+                LoggerUtil.INSTANCE.warning("Could not spill chat history", e);
+                closeSpillFile();
+            }
+        }
+        spillLength += 4 + bytes.length;
+        pageCache.remove(spilled / PAGE_SIZE); // a cached partial page is now stale
+        window[spilled % window.length] = null;
+        spilled++;
+    }
+
+    /**
+     * @param index
+     * @return the entry, paged in from disk if it's older than the window (null
+     *         if it can't be read)
+     */
+    public synchronized String get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        if (index >= spilled) {
+            return window[index % window.length];
+        }
+        String[] page = pageCache.get(index / PAGE_SIZE);
+        if (page == null) {
+            try {
+                page = readPage(index / PAGE_SIZE);
+                pageCache.put(index / PAGE_SIZE, page);
+            } catch (IOException e) {
+                LoggerUtil.INSTANCE.warning("Could not read chat history", e);
+                return null;
+            }
+        }
+        return page[index % PAGE_SIZE];
+    }
+
+    private String[] readPage(int page) throws IOException {
+        if (spillOut == null) {
+            throw new IOException("No chat history file");
+        }
+        spillOut.flush();
+        if (spillIn == null) {
+            spillIn = new RandomAccessFile(spillFile.toFile(), "r");
+        }
+        int first = page * PAGE_SIZE;
+        String[] entries = new String[Math.min(PAGE_SIZE, spilled - first)];
+        spillIn.seek(pageOffsets[page]);
+        // not closed, that would close spillIn's channel
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(spillIn.getChannel())));
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = readEntry(in);
+        }
+        return entries;
+    }
+
+    private static String readEntry(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes every entry, one per line, oldest first. Spilled entries are
+     * streamed from the file rather than paged through memory.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public synchronized void export(Writer out) throws IOException {
+        if (spillOut != null) {
+            spillOut.flush();
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(spillFile)))) {
+                for (int i = 0; i < spilled; i++) {
+                    out.write(readEntry(in));
+                    out.write('\n');
+                }
+            }
+        }
+        for (int i = spilled; i < size; i++) {
+            out.write(window[i % window.length]);
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    private void closeSpillFile() {
+        try {
+            if (spillOut != null) {
+                spillOut.close();
+            }
+            if (spillIn != null) {
+                spillIn.close();
+            }
+        } catch (IOException e) {
+            LoggerUtil.INSTANCE.info("Error closing chat history file", e);
+        }
+        spillOut = null;
+        spillIn = null;
+    }
+
+    @Override
+    public synchronized void close() {
+        pageCache.clear();
+        closeSpillFile();
+    }
+}
@@ -4,29 +4,25 @@ import Project.Client.Interfaces.IClientEvents;
 import Project.Client.Interfaces.IConnectionEvents;
 import Project.Client.Interfaces.IMessageEvents;
 import Project.Client.Interfaces.IRoomEvents;
-import Project.Common.ConnectionPayload;
 import Project.Common.LoggerUtil;
-import Project.Common.Payload;
-import Project.Common.PayloadType;
-import Project.Common.RollPayload;
-import Project.Common.RoomResultsPayload;
 import Project.Common.TextFX;
 import Project.Common.TextFX.Color;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
-import java.net.UnknownHostException;
 import java.util.List;
 import java.util.Scanner;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * Demoing bi-directional communication between client and server in a
  * multi-client scenario
+ * <p>
+ * The process-wide session used by ClientUI and the console: parses the text
+ * commands and hands everything else to a {@link ChatClient}, which does the
+ * actual connection work. Create ChatClients directly for more sessions.
+ * </p>
  */
 public enum Client {
     INSTANCE;
@@ -42,15 +38,13 @@ public enum Client {
         // Set the logger configuration
         LoggerUtil.INSTANCE.setConfig(config);
     }
-    private Socket server = null;
-    private ObjectOutputStream out = null;
-    private ObjectInputStream in = null;
+    private final ChatClient session = new ChatClient();
     final Pattern ipAddressPattern = Pattern
             .compile("/connect\\s+(\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}:\\d{3,5})");
     final Pattern localhostPattern = Pattern.compile("/connect\\s+(localhost:\\d{3,5})");
     private volatile boolean isRunning = true; // volatile for thread-safe visibility
-    private ConcurrentHashMap<Long, ClientData> knownClients = new ConcurrentHashMap<>();
-    private ClientData myData;
+    // name set via /name before a console /connect
+    private String clientName;
 
     // constants (used to reduce potential types when using them in code)
     private final String COMMAND_CHARACTER = "/";
@@ -63,25 +57,24 @@ public enum Client {
     private final String SINGLE_SPACE = " ";
 
     // callback that updates the UI
-    private static IClientEvents events;
+    private IClientEvents events;
 
     // needs to be private now that the enum logic is handling this
     private Client() {
         LoggerUtil.INSTANCE.info("Client Created");
-        myData = new ClientData();
+        session.addListener(new ConsoleEvents());
     }
 
-
+    /**
+     * @return the session behind this Client, for registering more listeners or
+     *         using the async send methods
+     */
+    public ChatClient getSession() {
+        return session;
+    }
 
     public boolean isConnected() {
-        if (server == null) {
-            return false;
-        }
-        // https://stackoverflow.com/a/10241044
-        // Note: these check the client's end of the socket connect; therefore they
-        // don't really help determine if the server had a problem
-        // and is just for lesson's sake
-        return server.isConnected() && !server.isClosed() && !server.isInputShutdown() && !server.isOutputShutdown();
+        return session.isConnected();
     }
 
     /**
@@ -93,21 +86,7 @@ public enum Client {
      */
     @Deprecated
     private boolean connect(String address, int port) {
-        try {
-            server = new Socket(address, port);
-            // channel to send to server
-            out = new ObjectOutputStream(server.getOutputStream());
-            // channel to listen to server
-            in = new ObjectInputStream(server.getInputStream());
-            LoggerUtil.INSTANCE.info("Client connected");
-            // Use CompletableFuture to run listenToServer() in a separate thread
-            CompletableFuture.runAsync(this::listenToServer);
-        } catch (UnknownHostException e) {
-            LoggerUtil.INSTANCE.warning("Unknown host", e);
-        } catch (IOException e) {
-            LoggerUtil.INSTANCE.severe("IOException", e);
-        }
-        return isConnected();
+        return connect(address, port, clientName, events);
     }
 
     /**
@@ -120,22 +99,20 @@ public enum Client {
      * @return true if connection was successful
      */
     public boolean connect(String address, int port, String username, IClientEvents callback) {
-        myData.setClientName(username);
-        Client.events = callback;
+        if (events != callback) {
+            if (events != null) {
+                session.removeListener(events);
+            }
+            events = callback;
+            if (callback != null) {
+                session.addListener(callback);
+            }
+        }
         try {
-            server = new Socket(address, port);
-            // channel to send to server
-            out = new ObjectOutputStream(server.getOutputStream());
-            // channel to listen to server
-            in = new ObjectInputStream(server.getInputStream());
+            session.connect(address, port, username);
             LoggerUtil.INSTANCE.info("Client connected");
-            // Use CompletableFuture to run listenToServer() in a separate thread
-            CompletableFuture.runAsync(this::listenToServer);
-            sendClientName();
-        } catch (UnknownHostException e) {
-            e.printStackTrace();
         } catch (IOException e) {
-            e.printStackTrace();
+            LoggerUtil.INSTANCE.warning("Could not connect", e);
         }
         return isConnected();
     }
@@ -174,7 +151,7 @@ public enum Client {
      */
     private boolean processClientCommand(String text) throws IOException {
         if (isConnection(text)) {
-            if (myData.getClientName() == null || myData.getClientName().length() == 0) {
+            if (clientName == null || clientName.length() == 0) {
                 System.out.println(TextFX.colorize("Name must be set first via /name command", Color.RED));
                 return true;
             }
@@ -183,7 +160,6 @@ public enum Client {
             // splits on : to get host as index 0 and port as index 1
             String[] parts = text.trim().replaceAll(" +", " ").split(" ")[1].split(":");
             connect(parts[0].trim(), Integer.parseInt(parts[1].trim()));
-            sendClientName();
             return true;
         } 
         
@@ -194,12 +170,9 @@ public enum Client {
             String[] parts = text.split(" ", 2);
             if (parts.length == 2) {
                 String target = parts[1];
-                long targetId = findClientIdByUsername(target);
-                if (targetId != -1) {
-                    Payload p = new Payload();
-                    p.setPayloadType(text.startsWith("/mute") ? PayloadType.MUTE : PayloadType.UNMUTE);
-                    p.setClientId(targetId);
-                    send(p);
+                long targetId = session.findClientIdByUsername(target);
+                if (targetId != ClientData.DEFAULT_CLIENT_ID) {
+                    await(session.sendMute(targetId, text.startsWith("/mute")));
                 } else {
                     System.out.println("User " + target + " not found.");
                 }
@@ -233,12 +206,12 @@ public enum Client {
             close();
             return true;
         } else if (text.startsWith("/name")) {
-            myData.setClientName(text.replace("/name", "").trim());
-            System.out.println(TextFX.colorize("Set client name to " + myData.getClientName(), Color.CYAN));
+            clientName = text.replace("/name", "").trim();
+            System.out.println(TextFX.colorize("Set client name to " + clientName, Color.CYAN));
             return true;
         } else if (text.equalsIgnoreCase("/users")) {
             System.out.println(
-                    String.join("\n", knownClients.values().stream()
+                    String.join("\n", session.getKnownClients().stream()
                             .map(c -> String.format("%s(%s)", c.getClientName(), c.getClientId())).toList()));
             return true;
         } else { // logic previously from Room.java
@@ -278,12 +251,38 @@ public enum Client {
         }
         return false;
     }
-
     public long getMyClientId() {
-        return myData.getClientId();
+        return session.getMyClientId();
+    }
+
+    /**
+     * Returns the ClientName of a specific Client by ID.
+     * 
+     * @param id
+     * @return the name, or Room if id is -1, or [Unknown] if failed to find
+     */
+    public String getClientNameFromId(long id) {
+        return session.getClientNameFromId(id);
     }
     // send methods to pass data to the ServerThread
 
+    /**
+     * Waits for an async send so callers keep getting the IOException
+     * 
+     * @param send
+     * @throws IOException
+     */
+    private void await(CompletableFuture<Void> send) throws IOException {
+        try {
+            send.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
     /**
      * Sends a search to the server-side to get a list of potentially matching Rooms
      * 
@@ -291,10 +290,7 @@ public enum Client {
      * @throws IOException
      */
     public void sendListRooms(String roomQuery) throws IOException {
-        Payload p = new Payload();
-        p.setPayloadType(PayloadType.ROOM_LIST);
-        p.setMessage(roomQuery);
-        send(p);
+        await(session.sendListRooms(roomQuery));
     }
 
     /**
@@ -304,10 +300,7 @@ public enum Client {
      * @throws IOException
      */
     public void sendCreateRoom(String room) throws IOException {
-        Payload p = new Payload();
-        p.setPayloadType(PayloadType.ROOM_CREATE);
-        p.setMessage(room);
-        send(p);
+        await(session.sendCreateRoom(room));
     }
 
     /**
@@ -317,10 +310,7 @@ public enum Client {
      * @throws IOException
      */
     public void sendJoinRoom(String room) throws IOException {
-        Payload p = new Payload();
-        p.setPayloadType(PayloadType.ROOM_JOIN);
-        p.setMessage(room);
-        send(p);
+        await(session.sendJoinRoom(room));
     }
 
     /**
@@ -329,9 +319,7 @@ public enum Client {
      * @throws IOException
      */
     void sendDisconnect() throws IOException {
-        Payload p = new Payload();
-        p.setPayloadType(PayloadType.DISCONNECT);
-        send(p);
+        await(session.sendDisconnect());
     }
 
     /**
@@ -352,75 +340,16 @@ public enum Client {
             String[] parts = message.split(" ", 2);
             if (parts.length == 2) {
                 String targetUsername = parts[0].substring(1);
-                long targetId = findClientIdByUsername(targetUsername);
-                if (targetId != -1) {
-                    sendPrivateMessage(targetId, parts[1]);
+                long targetId = session.findClientIdByUsername(targetUsername);
+                if (targetId != ClientData.DEFAULT_CLIENT_ID) {
+                    await(session.sendPrivateMessage(targetId, parts[1]));
                 } else {
                     System.out.println("User " + targetUsername + " not found.");
                 }
             }
         } else {
-            Payload p = new Payload();
-            p.setPayloadType(PayloadType.MESSAGE);
-            p.setMessage(message);
-            send(p);
-        }
-    }
-
-
-    private long findClientIdByUsername(String username) {
-        for (ClientData client : knownClients.values()) {
-            if (client.getClientName().equalsIgnoreCase(username)) {
-                return client.getClientId();
-            }
-        }
-        return -1;
-    }
-
-    private void sendPrivateMessage(long targetId, String message) throws IOException {
-        Payload p = new Payload();
-        p.setPayloadType(PayloadType.PRIVATE_MESSAGE);
-        p.setClientId(targetId);
-        p.setMessage(message);
-        send(p);
-    }
-
-
-
-
-    
-
-    /**
-     * Sends chosen client name after socket handshake
-     * 
-     * @throws IOException
-     */
-    private void sendClientName() throws IOException {
-        if (myData.getClientName() == null || myData.getClientName().length() == 0) {
-            System.out.println(TextFX.colorize("Name must be set first via /name command", Color.RED));
-            return;
+            await(session.sendMessage(message));
         }
-        ConnectionPayload cp = new ConnectionPayload();
-        cp.setClientName(myData.getClientName());
-        send(cp);
-    }
-
-    /**
-     * Generic send that passes any Payload over the socket (to ServerThread)
-     * 
-     * @param p
-     * @throws IOException
-     */
-    private void send(Payload p) throws IOException {
-        try {
-            LoggerUtil.INSTANCE.fine("Sending Payload: " + p);
-            out.writeObject(p);
-            out.flush();
-        } catch (IOException e) {
-            LoggerUtil.INSTANCE.severe("Socket send exception", e);
-            throw e;
-        }
-
     }
     // end send methods
 
@@ -434,61 +363,6 @@ public enum Client {
         inputFuture.join();
     }
 
-    /**
-     * Listens for messages from the server
-     */
-
-
-
-
-
-
-
-
-
-
-    
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-    private void listenToServer() {
-        try {
-            while (isRunning && isConnected()) {
-                Payload fromServer = (Payload) in.readObject(); // blocking read
-                if (fromServer != null) {
-                    LoggerUtil.INSTANCE.fine("Received from server: " + fromServer);
-
-                    /*Changed from processServermessage */
-                    processPayload(fromServer);
-                } else {
-                    LoggerUtil.INSTANCE.info("Server disconnected");
-                    break;
-                }
-            }
-        } catch (ClassCastException | ClassNotFoundException cce) {
-            LoggerUtil.INSTANCE.severe("Error reading object as specified type: ", cce);
-        } catch (IOException e) {
-            if (isRunning) {
-                LoggerUtil.INSTANCE.info("Connection dropped", e);
-            }
-        } finally {
-            closeServerConnection();
-        }
-        LoggerUtil.INSTANCE.info("listenToServer thread stopped");
-    }
-
     /**
      * Listens for keyboard input from the user
      */
@@ -520,44 +394,11 @@ public enum Client {
      */
     private void close() {
         isRunning = false;
-        closeServerConnection();
+        session.close();
         LoggerUtil.INSTANCE.info("Client terminated");
         // System.exit(0); // Terminate the application
     }
 
-    /**
-     * Closes the server connection and associated resources
-     */
-    private void closeServerConnection() {
-        myData.reset();
-        knownClients.clear();
-        try {
-            if (out != null) {
-                LoggerUtil.INSTANCE.info("Closing output stream");
-                out.close();
-            }
-        } catch (Exception e) {
-            LoggerUtil.INSTANCE.info("Error closing output stream", e);
-        }
-        try {
-            if (in != null) {
-                LoggerUtil.INSTANCE.info("Closing input stream");
-                in.close();
-            }
-        } catch (Exception e) {
-            LoggerUtil.INSTANCE.info("Error closing input stream", e);
-        }
-        try {
-            if (server != null) {
-                LoggerUtil.INSTANCE.info("Closing connection");
-                server.close();
-                LoggerUtil.INSTANCE.info("Closed socket");
-            }
-        } catch (IOException e) {
-            LoggerUtil.INSTANCE.info("Error closing socket", e);
-        }
-    }
-
     public static void main(String[] args) {
         Client client = Client.INSTANCE;
         try {
@@ -568,244 +409,92 @@ public enum Client {
     }
 
     /**
-     * Handles received message from the ServerThread
-     * 
-     * @param payload
+     * Prints the session's events to the terminal
      */
-    private void processPayload(Payload payload) {
-        try {
-            LoggerUtil.INSTANCE.info("Received Payload: " + payload);
-            switch (payload.getPayloadType()) {
-                case PayloadType.CLIENT_ID: // get id assigned
-                    ConnectionPayload cp = (ConnectionPayload) payload;
-                    processClientData(cp.getClientId(), cp.getClientName());
-                    break;
-                case PayloadType.SYNC_CLIENT: // silent add
-                    cp = (ConnectionPayload) payload;
-                    processClientSync(cp.getClientId(), cp.getClientName());
-                    break;
-                case PayloadType.DISCONNECT: // remove a disconnected client (mostly for the specific message vs leaving
-                                             // a room)
-                    cp = (ConnectionPayload) payload;
-                    processDisconnect(cp.getClientId(), cp.getClientName());
-                    // note: we want this to cascade
-                case PayloadType.ROOM_JOIN: // add/remove client info from known clients
-                    cp = (ConnectionPayload) payload;
-                    processRoomAction(cp.getClientId(), cp.getClientName(), cp.getMessage(), cp.isConnect());
-                    break;
-                case PayloadType.ROOM_LIST:
-                    RoomResultsPayload rrp = (RoomResultsPayload) payload;
-                    processRoomsList(rrp.getRooms(), rrp.getMessage());
-                    break;
-
-
-                //st278 and 07/29/24
-                case PayloadType.MESSAGE: // displays a received message
-                    processMessage(payload.getClientId(), payload.getMessage());
-                    break;
-                case MUTE:
-                case UNMUTE:
-                    boolean isMuted = payload.getPayloadType() == PayloadType.MUTE;
-                    ((ClientUI) events).onMuteStatusChange(payload.getClientId(), isMuted);
-                    break;
-
-                default:
-                    break;
-            }
-        } catch (Exception e) {
-            LoggerUtil.INSTANCE.severe("Could not process Payload: " + payload, e);
-        }
-    }
-
-    /**
-     * Returns the ClientName of a specific Client by ID.
-     * 
-     * @param id
-     * @return the name, or Room if id is -1, or [Unknown] if failed to find
-     */
-    public String getClientNameFromId(long id) {
-        if (id == ClientData.DEFAULT_CLIENT_ID) {
-            return "Room";
-        }
-        if (knownClients.containsKey(id)) {
-            return knownClients.get(id).getClientName();
-        }
-        return "[Unknown]";
-    }
-
-    // payload processors
-    private void processRoomsList(List<String> rooms, String message) {
-        // invoke onReceiveRoomList callback
-        ((IRoomEvents) events).onReceiveRoomList(rooms, message);
-        if (rooms == null || rooms.size() == 0) {
+    private class ConsoleEvents implements IConnectionEvents, IMessageEvents, IRoomEvents {
+        @Override
+        public void onClientDisconnect(long clientId, String clientName) {
             System.out.println(
-                    TextFX.colorize("No rooms found matching your query",
+                    TextFX.colorize(String.format("*%s disconnected*",
+                            clientId == getMyClientId() ? "You" : clientName),
                             Color.RED));
-            return;
         }
-        System.out.println(TextFX.colorize("Room Results:", Color.PURPLE));
-        System.out.println(
-                String.join("\n", rooms));
-
-    }
 
-    private void processDisconnect(long clientId, String clientName) {
-        // invoke onClientDisconnect callback
-        ((IConnectionEvents) events).onClientDisconnect(clientId, clientName);
-        System.out.println(
-                TextFX.colorize(String.format("*%s disconnected*",
-                        clientId == myData.getClientId() ? "You" : clientName),
-                        Color.RED));
-        if (clientId == myData.getClientId()) {
-            closeServerConnection();
+        @Override
+        public void onReceiveClientId(long id) {
+            System.out.println(TextFX.colorize(String.format("*Connected as %s[%s]*", session.getMyClientName(), id),
+                    Color.GREEN));
         }
-    }
-
-    private void processClientData(long clientId, String clientName) {
 
-        if (myData.getClientId() == ClientData.DEFAULT_CLIENT_ID) {
-            myData.setClientId(clientId);
-            myData.setClientName(clientName);
-            // invoke onReceiveClientId callback
-            ((IConnectionEvents) events).onReceiveClientId(clientId);
-            // knownClients.put(cp.getClientId(), myData);// <-- this is handled later
+        @Override
+        public void onSyncClient(long id, String clientName) {
+            // silent add
         }
-    }
-    
-
-
 
+        @Override
+        public void onSyncClients(long[] ids, String[] clientNames) {
+            // silent bulk add
+        }
 
-    private void processMessage(long clientId, String message) {
-        String name = knownClients.containsKey(clientId) ? knownClients.get(clientId).getClientName() : "Room";
-        
-        // Remove console color codes
-        message = message.replaceAll("\u001B\\[\\d+m", "");
-        
-        // Convert TextFX color to HTML
-        if (message.startsWith("ROLL:") || message.startsWith("FLIP:")) {
-            message = "<font color='purple'>" + message.substring(message.indexOf(":") + 1).trim() + "</font>";
+        @Override
+        public void onResetUserList() {
+            // nothing listed on the console
         }
-        
-        System.out.println(String.format("%s: %s", name, message));
-        // invoke onMessageReceive callback
-        ((IMessageEvents) events).onMessageReceive(clientId, message);
-    }
 
-    private void processClientSync(long clientId, String clientName) {
+        @Override
+        public void onMessageReceive(long clientId, String message) {
+            System.out.println(String.format("%s: %s", getClientNameFromId(clientId), message));
+        }
 
-        if (!knownClients.containsKey(clientId)) {
-            ClientData cd = new ClientData();
-            cd.setClientId(clientId);
-            cd.setClientName(clientName);
-            knownClients.put(clientId, cd);
-            // invoke onSyncClient callback
-            ((IConnectionEvents) events).onSyncClient(clientId, clientName);
+        @Override
+        public void onReceiveRoomList(List<String> rooms, String message) {
+            if (rooms == null || rooms.size() == 0) {
+                System.out.println(
+                        TextFX.colorize("No rooms found matching your query",
+                                Color.RED));
+                return;
+            }
+            System.out.println(TextFX.colorize("Room Results:", Color.PURPLE));
+            System.out.println(
+                    String.join("\n", rooms));
         }
-    }
 
-    private void processRoomAction(long clientId, String clientName, String message, boolean isJoin) {
-
-        if (isJoin && !knownClients.containsKey(clientId)) {
-            ClientData cd = new ClientData();
-            cd.setClientId(clientId);
-            cd.setClientName(clientName);
-            knownClients.put(clientId, cd);
-            System.out.println(TextFX
-                    .colorize(String.format("*%s[%s] joined the Room %s*", clientName, clientId, message),
-                            Color.GREEN));
-            // invoke onRoomJoin callback
-            ((IRoomEvents) events).onRoomAction(clientId, clientName, message, isJoin);
-        } else if (!isJoin) {
-            ClientData removed = knownClients.remove(clientId);
-            if (removed != null) {
+        @Override
+        public void onRoomAction(long clientId, String clientName, String roomName, boolean isJoin) {
+            if (isJoin) {
+                System.out.println(TextFX
+                        .colorize(String.format("*%s[%s] joined the Room %s*", clientName, clientId, roomName),
+                                Color.GREEN));
+            } else {
                 System.out.println(
-                        TextFX.colorize(String.format("*%s[%s] left the Room %s*", clientName, clientId, message),
+                        TextFX.colorize(String.format("*%s[%s] left the Room %s*", clientName, clientId, roomName),
                                 Color.YELLOW));
-                // invoke onRoomJoin callback
-                ((IRoomEvents) events).onRoomAction(clientId, clientName, message, isJoin);
-            }
-            // clear our list
-            if (clientId == myData.getClientId()) {
-                knownClients.clear();
-                // invoke onResetUserList()
-                ((IConnectionEvents) events).onResetUserList();
             }
         }
     }
 
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
     // /*
     // Commented Out to test 
     private void processRollCommand(String command) throws IOException {
-        RollPayload payload = new RollPayload();
-        payload.setClientId(getMyClientId());
-    
         if (command.matches("^/roll \\d+$")) {
             int max = Integer.parseInt(command.split(" ")[1]);
-            payload.setSimpleRoll(true);
-            payload.setQuantity(1);
-            payload.setSides(max);
+            await(session.sendRoll(1, max, true));
         } else if (command.matches("^/roll \\d+d\\d+$")) {
             String[] parts = command.split("d");
             int quantity = Integer.parseInt(parts[0].split(" ")[1]);
             int sides = Integer.parseInt(parts[1]);
-            payload.setSimpleRoll(false);
-            payload.setQuantity(quantity);
-            payload.setSides(sides);
+            await(session.sendRoll(quantity, sides, false));
         } else {
             System.out.println("Invalid roll command format");
             return;
         }
-    
-        send(payload);
         System.out.println("You rolled: " + command);
     }
     
     private void processFlipCommand() throws IOException {
-        Payload payload = new Payload();
-        payload.setPayloadType(PayloadType.FLIP);
-        payload.setClientId(getMyClientId());
-        send(payload);
+        await(session.sendFlip());
         System.out.println("You flipped a coin");
     }
     // */
 
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-    
-    // end payload processors
-
-}
\ No newline at end of file
+}
@@ -3,6 +3,7 @@ package Project.Client;
 import Project.Client.Interfaces.ICardControls;
 import Project.Client.Interfaces.IConnectionEvents;
 import Project.Client.Interfaces.IMessageEvents;
+import Project.Client.Interfaces.IMuteEvents;
 import Project.Client.Interfaces.IRoomEvents;
 import Project.Client.Views.ChatPanel;
 import Project.Client.Views.ConnectionPanel;
@@ -33,7 +34,7 @@ import javax.swing.SwingUtilities;
  * ClientUI is the main application window that manages different screens and
  * handles client events.
  */
-public class ClientUI extends JFrame implements IConnectionEvents, IMessageEvents, IRoomEvents, ICardControls {
+public class ClientUI extends JFrame implements IConnectionEvents, IMessageEvents, IRoomEvents, IMuteEvents, ICardControls {
     private CardLayout card = new CardLayout(); // Layout manager to switch between different screens
     private Container container; // Container to hold different panels
     private JPanel cardContainer;
@@ -215,6 +216,8 @@ public class ClientUI extends JFrame implements IConnectionEvents, IMessageEvent
             }
         }
     }
+
+    @Override
     public void onMuteStatusChange(long clientId, boolean isMuted) {
         if (currentCard.ordinal() >= CardView.CHAT.ordinal()) {
             chatPanel.updateUserMuteStatus(clientId, isMuted);
@@ -240,6 +243,17 @@ public class ClientUI extends JFrame implements IConnectionEvents, IMessageEvent
         }
     }
 
+    @Override
+    public void onSyncClients(long[] clientIds, String[] clientNames) {
+        if (currentCard.ordinal() >= CardView.CHAT.ordinal()) {
+            String[] labels = new String[clientIds.length];
+            for (int i = 0; i < clientIds.length; i++) {
+                labels[i] = String.format("%s (%s)", clientNames[i], clientIds[i]);
+            }
+            chatPanel.addUserListItems(clientIds, labels);
+        }
+    }
+
     @Override
     public void onReceiveRoomList(List<String> rooms, String message) {
         roomsPanel.removeAllRooms();
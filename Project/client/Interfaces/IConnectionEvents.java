@@ -29,6 +29,14 @@ public interface IConnectionEvents extends IClientEvents {
      */
     void onSyncClient(long id, String clientName);
 
+    /**
+     * Used to sync every existing client of a room at once.
+     *
+     * @param ids         The client IDs.
+     * @param clientNames The client names, same order as ids.
+     */
+    void onSyncClients(long[] ids, String[] clientNames);
+
     /**
      * Triggered when we need to clear the user list, likely during a room
      * transition.
@@ -0,0 +1,14 @@
+package Project.Client.Interfaces;
+
+/**
+ * Interface for handling mute events.
+ */
+public interface IMuteEvents extends IClientEvents {
+    /**
+     * Triggered when the server confirms a mute or unmute we requested.
+     *
+     * @param id      The client ID that was (un)muted.
+     * @param isMuted True if the client is now muted.
+     */
+    void onMuteStatusChange(long id, boolean isMuted);
+}
@@ -1,39 +1,35 @@
 package Project.Client.Views;
 
 import Project.Client.CardView;
+import Project.Client.ChatHistory;
 import Project.Client.Client;
 import Project.Client.Interfaces.ICardControls;
 import Project.Common.LoggerUtil;
 import java.awt.BorderLayout;
-import java.awt.Color;
-import java.awt.Component;
-import java.awt.Dimension;
-import java.awt.GridBagConstraints;
-import java.awt.GridBagLayout;
-import java.awt.Insets;
 import java.awt.event.ComponentEvent;
 import java.awt.event.ComponentListener;
-import java.awt.event.ContainerEvent;
-import java.awt.event.ContainerListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.swing.BorderFactory;
-import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
-import javax.swing.JEditorPane;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
-import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
 import javax.swing.JTextField;
 import javax.swing.ScrollPaneConstants;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.border.EmptyBorder;
 
 
@@ -44,13 +40,23 @@ import javax.swing.border.EmptyBorder;
  */
 //st278 and 07/22/24
 public class ChatPanel extends JPanel {
-    private JPanel chatArea = null;
+    private TranscriptView chatArea = null;
     private UserListPanel userListPanel;
     private final float CHAT_SPLIT_PERCENT = 0.7f;
 
 
     private JButton exportButton;
 
+    // updates from the client's reader thread, applied in batches about once a
+    // frame instead of one EDT task (and layout) each
+    private static final int FRAME_MS = Integer.getInteger("chat.ui.frameMs", 16);
+    private static final int MAX_UPDATES_PER_FRAME = 5000;
+    private static final long NO_SENDER = Long.MIN_VALUE;
+    private final ConcurrentLinkedQueue<Runnable> pendingUpdates = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pendingLastSender = new AtomicLong(NO_SENDER);
+    private final AtomicBoolean isPumpScheduled = new AtomicBoolean(false);
+    private final Timer updatePump = new Timer(FRAME_MS, e -> drainUpdates());
+
     /**
      * Constructor to create the ChatPanel UI.
      * 
@@ -58,9 +64,13 @@ public class ChatPanel extends JPanel {
      */
     public ChatPanel(ICardControls controls) {
         super(new BorderLayout(10, 10));
+        updatePump.setRepeats(false);
+        // a coalesced timer drops a firing that lands while the last batch is
+        // still draining, and that batch's updates would sit in the queue
+        updatePump.setCoalesce(false);
 
-        JPanel chatContent = new JPanel(new GridBagLayout());
-        chatContent.setAlignmentY(Component.TOP_ALIGNMENT);
+        // only the rows in view are laid out and painted, older ones spill to disk
+        TranscriptView chatContent = new TranscriptView(new ChatHistory());
 
         JPanel input = new JPanel();
         input.setLayout(new BoxLayout(input, BoxLayout.X_AXIS));
@@ -157,36 +167,68 @@ public class ChatPanel extends JPanel {
 
         this.setName(CardView.CHAT.name());
         controls.addPanel(CardView.CHAT.name(), this);
+    }
 
-        chatArea.addContainerListener(new ContainerListener() {
-            @Override
-            public void componentAdded(ContainerEvent e) {
-                SwingUtilities.invokeLater(() -> {
-                    if (chatArea.isVisible()) {
-                        chatArea.revalidate();
-                        chatArea.repaint();
-                    }
-                });
-            }
+    /**
+     * Queues a UI update from any thread; the pump applies it with the rest of
+     * its batch on the EDT
+     */
+    private void enqueue(Runnable update) {
+        pendingUpdates.add(update);
+        schedulePump();
+    }
 
-            @Override
-            public void componentRemoved(ContainerEvent e) {
-                SwingUtilities.invokeLater(() -> {
-                    if (chatArea.isVisible()) {
-                        chatArea.revalidate();
-                        chatArea.repaint();
-                    }
-                });
+    private void schedulePump() {
+        // one pending timer at a time, whatever arrives meanwhile joins its batch
+        if (isPumpScheduled.compareAndSet(false, true)) {
+            updatePump.start();
+        }
+    }
+
+    /**
+     * Applies the queued updates, then the latest last sender
+     */
+    private void drainUpdates() {
+        isPumpScheduled.set(false);
+        boolean hadRows = false;
+        Runnable update;
+        int budget = MAX_UPDATES_PER_FRAME;
+        while (budget-- > 0 && (update = pendingUpdates.poll()) != null) {
+            try {
+                update.run();
+            } catch (Exception e) {
+                // one bad update mustn't stall the ones behind it
+                LoggerUtil.INSTANCE.severe("Error applying a UI update", e);
             }
-        });
+            hadRows |= update instanceof AddText;
+        }
+        if (!pendingUpdates.isEmpty()) {
+            schedulePump(); // the rest go next frame so input stays responsive
+        }
+        long lastSender = pendingLastSender.getAndSet(NO_SENDER);
+        if (lastSender != NO_SENDER) {
+            userListPanel.updateLastSender(lastSender);
+        }
+        if (hadRows) {
+            // Scroll down on new messages (once the new height is laid out)
+            SwingUtilities.invokeLater(() -> chatArea.scrollToBottom());
+        }
+    }
 
-        // Add vertical glue to push messages to the top
-        GridBagConstraints gbc = new GridBagConstraints();
-        gbc.gridx = 0; // Column index 0
-        gbc.gridy = GridBagConstraints.RELATIVE; // Automatically move to the next row
-        gbc.weighty = 1.0; // Give extra space vertically to this component
-        gbc.fill = GridBagConstraints.BOTH; // Fill both horizontally and vertically
-        chatArea.add(Box.createVerticalGlue(), gbc);
+    /**
+     * Marks the queued row so the pump knows to scroll
+     */
+    private class AddText implements Runnable {
+        private final String text;
+
+        AddText(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public void run() {
+            chatArea.addRow(text);
+        }
     }
 
     /**
@@ -196,7 +238,17 @@ public class ChatPanel extends JPanel {
      * @param clientName The name of the client.
      */
     public void addUserListItem(long clientId, String clientName) {
-        SwingUtilities.invokeLater(() -> userListPanel.addUserListItem(clientId, clientName));
+        enqueue(() -> userListPanel.addUserListItem(clientId, clientName));
+    }
+
+    /**
+     * Adds several users to the user list in one UI update.
+     * 
+     * @param clientIds   The IDs of the clients.
+     * @param clientNames The names of the clients, same order as the IDs.
+     */
+    public void addUserListItems(long[] clientIds, String[] clientNames) {
+        enqueue(() -> userListPanel.addUserListItems(clientIds, clientNames));
     }
 
     /**
@@ -205,14 +257,14 @@ public class ChatPanel extends JPanel {
      * @param clientId The ID of the client to be removed.
      */
     public void removeUserListItem(long clientId) {
-        SwingUtilities.invokeLater(() -> userListPanel.removeUserListItem(clientId));
+        enqueue(() -> userListPanel.removeUserListItem(clientId));
     }
 
     /**
      * Clears the user list.
      */
     public void clearUserList() {
-        SwingUtilities.invokeLater(() -> userListPanel.clearUserList());
+        enqueue(() -> userListPanel.clearUserList());
     }
 
     /**
@@ -229,67 +281,19 @@ public class ChatPanel extends JPanel {
 
      //st278 and 07/24/24
     public void addText(String text) {
-        SwingUtilities.invokeLater(() -> {
-            JEditorPane textContainer = new JEditorPane("text/html", "<html>" + text + "</html>");
-            textContainer.setEditable(false);
-            textContainer.setBorder(BorderFactory.createEmptyBorder());
-            textContainer.setOpaque(false);
-            textContainer.setBackground(new Color(0, 0, 0, 0));
-            
-
-            // Account for the width of the vertical scrollbar
-            JScrollPane parentScrollPane = (JScrollPane) SwingUtilities.getAncestorOfClass(JScrollPane.class, chatArea);
-            int scrollBarWidth = parentScrollPane.getVerticalScrollBar().getPreferredSize().width;
-
-            // Adjust the width of the text container
-            int availableWidth = chatArea.getWidth() - scrollBarWidth - 10; // Subtract an additional padding
-            textContainer.setSize(new Dimension(availableWidth, Integer.MAX_VALUE));
-            Dimension d = textContainer.getPreferredSize();
-            textContainer.setPreferredSize(new Dimension(availableWidth, d.height));
-            // Remove background and border
-            textContainer.setOpaque(false);
-            textContainer.setBorder(BorderFactory.createEmptyBorder());
-            textContainer.setBackground(new Color(0, 0, 0, 0));
-
-            // GridBagConstraints settings for each message
-            GridBagConstraints gbc = new GridBagConstraints();
-            gbc.gridx = 0; // Column index 0
-            gbc.gridy = GridBagConstraints.RELATIVE; // Automatically move to the next row
-            gbc.weightx = 1; // Let the component grow horizontally to fill the space
-            gbc.fill = GridBagConstraints.HORIZONTAL; // Fill horizontally
-            gbc.insets = new Insets(0, 0, 5, 0); // Add spacing between messages
-
-            chatArea.add(textContainer, gbc);
-            chatArea.revalidate();
-            chatArea.repaint();
-
-            // Scroll down on new message
-            SwingUtilities.invokeLater(() -> {
-                JScrollBar vertical = parentScrollPane.getVerticalScrollBar();
-                vertical.setValue(vertical.getMaximum());
-            });
-        });
+        enqueue(new AddText(text));
     }
 
 
 
     //st278 and 07/27/24
     private void exportChatHistory() {
-        StringBuilder chatHistory = new StringBuilder();
-        
-        for (Component component : chatArea.getComponents()) {
-            if (component instanceof JEditorPane) {
-                JEditorPane textContainer = (JEditorPane) component;
-                chatHistory.append(textContainer.getText()).append("\n");
-            }
-        }
-
         LocalDateTime now = LocalDateTime.now();
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
         String fileName = "chat_history_" + now.format(formatter) + ".txt";
 
-        try (FileWriter writer = new FileWriter(fileName)) {
-            writer.write(chatHistory.toString());
+        try (Writer writer = new BufferedWriter(new FileWriter(fileName))) {
+            chatArea.getHistory().export(writer); // streamed, not built up in memory
             JOptionPane.showMessageDialog(this, "Chat history exported to " + fileName, "Export Successful", JOptionPane.INFORMATION_MESSAGE);
         } catch (IOException ex) {
             JOptionPane.showMessageDialog(this, "Error exporting chat history: " + ex.getMessage(), "Export Failed", JOptionPane.ERROR_MESSAGE);
@@ -299,11 +303,17 @@ public class ChatPanel extends JPanel {
 
 
     public void updateUserMuteStatus(long clientId, boolean isMuted) {
-        userListPanel.updateUserMuteStatus(clientId, isMuted);
+        enqueue(() -> userListPanel.updateUserMuteStatus(clientId, isMuted));
     }
 
+    /**
+     * Highlights the sender; only the latest one per batch is applied
+     * 
+     * @param clientId
+     */
     public void updateLastSender(long clientId) {
-        userListPanel.updateLastSender(clientId);
+        pendingLastSender.set(clientId);
+        schedulePump();
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,299 @@
+package Project.Client.Views;
+
+import Project.Client.ChatHistory;
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.BitSet;
+import javax.swing.BorderFactory;
+import javax.swing.CellRendererPane;
+import javax.swing.JComponent;
+import javax.swing.JEditorPane;
+import javax.swing.JViewport;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+
+/**
+ * Chat transcript that only lays out and paints the rows in view.
+ * <p>
+ * Rows are HTML fragments painted through one shared JEditorPane (the way
+ * JList paints through its cell renderer), so a row costs two ints instead of
+ * a whole component and document. Heights are measured the first time a row
+ * is painted at the current width and cached; rows not measured yet (including
+ * fresh appends) count as one line. Row offsets are kept as prefix sums, so
+ * finding the rows under the clip is a binary search and an append is O(1).
+ * </p>
+ * <p>
+ * The text lives in a {@link ChatHistory}. The view only covers a slice of
+ * it, at most two history windows: rows scrolled well above the view are
+ * dropped as new ones arrive, and older rows are paged back in a page at a
+ * time when the top is reached.
+ * </p>
+ * Must only be used from the EDT.
+ */
+public class TranscriptView extends JComponent implements Scrollable {
+    private static final int ROW_GAP = 5; // spacing between messages
+    private static final int RIGHT_PADDING = 10;
+
+    private final ChatHistory history;
+    private final int maxRows;
+    private int base = 0; // history index of row 0
+    private int rowCount = 0;
+    private int[] heights = new int[1024];
+    // offsets[i] is the y of row i, offsets[rowCount] the total height
+    private int[] offsets = new int[1025];
+    private BitSet measured = new BitSet();
+    private final JEditorPane stamp = new JEditorPane();
+    private final CellRendererPane rendererPane = new CellRendererPane();
+    private int measuredWidth = -1;
+    private int estimatedHeight;
+    private boolean isLoadPending = false;
+
+    /**
+     * @param history where the rows are kept
+     */
+    public TranscriptView(ChatHistory history) {
+        this.history = history;
+        this.maxRows = history.getWindowSize() * 2;
+        stamp.setContentType("text/html");
+        stamp.setEditable(false);
+        stamp.setOpaque(false);
+        stamp.setBorder(BorderFactory.createEmptyBorder());
+        add(rendererPane);
+        stamp.setText("<html>X</html>");
+        estimatedHeight = stamp.getPreferredSize().height;
+    }
+
+    public ChatHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Appends a row (an HTML fragment, without the html tags)
+     *
+     * @param html
+     */
+    public void addRow(String html) {
+        history.add(html);
+        ensureCapacity(rowCount + 1);
+        // measured when it's first painted, appends stay cheap during bursts
+        heights[rowCount] = estimatedHeight;
+        offsets[rowCount + 1] = offsets[rowCount] + estimatedHeight + ROW_GAP;
+        rowCount++;
+        if (rowCount > maxRows) {
+            dropOldRows();
+        }
+        revalidate();
+        repaint(0, offsets[rowCount - 1], getWidth(), estimatedHeight + ROW_GAP);
+    }
+
+    /**
+     * Scrolls to the newest row
+     */
+    public void scrollToBottom() {
+        scrollRectToVisible(new Rectangle(0, Math.max(0, offsets[rowCount] - 1), 1, 1));
+    }
+
+    private void ensureCapacity(int rows) {
+        if (rows > heights.length) {
+            int capacity = Math.max(rows, heights.length * 2);
+            heights = Arrays.copyOf(heights, capacity);
+            offsets = Arrays.copyOf(offsets, capacity + 1);
+        }
+    }
+
+    /**
+     * Releases rows above the view so the slice goes back to one window
+     */
+    private void dropOldRows() {
+        int drop = rowCount - history.getWindowSize();
+        if (isShowing()) {
+            // never drop what's being read
+            drop = Math.min(drop, rowAt(getVisibleRect().y));
+        }
+        if (drop <= 0) {
+            return;
+        }
+        int removedHeight = offsets[drop];
+        System.arraycopy(heights, drop, heights, 0, rowCount - drop);
+        measured = measured.get(drop, rowCount);
+        rowCount -= drop;
+        base += drop;
+        updateOffsets(0);
+        shiftView(-removedHeight);
+    }
+
+    /**
+     * Pages older rows in above the current first row
+     */
+    private void loadOlderRows() {
+        isLoadPending = false;
+        int add = Math.min(ChatHistory.PAGE_SIZE, base);
+        if (add == 0) {
+            return;
+        }
+        ensureCapacity(rowCount + add);
+        System.arraycopy(heights, 0, heights, add, rowCount);
+        Arrays.fill(heights, 0, add, estimatedHeight);
+        BitSet shifted = new BitSet();
+        for (int i = measured.nextSetBit(0); i >= 0; i = measured.nextSetBit(i + 1)) {
+            shifted.set(i + add);
+        }
+        measured = shifted;
+        rowCount += add;
+        base -= add;
+        updateOffsets(0);
+        shiftView(offsets[add]);
+    }
+
+    /**
+     * Resizes now and moves the viewport by delta so the rows in view stay put
+     */
+    private void shiftView(int delta) {
+        Container parent = getParent();
+        if (parent instanceof JViewport) {
+            JViewport viewport = (JViewport) parent;
+            invalidate();
+            viewport.validate();
+            Point position = viewport.getViewPosition();
+            viewport.setViewPosition(new Point(position.x, Math.max(0, position.y + delta)));
+        }
+        repaint();
+    }
+
+    private int rowWidth() {
+        return Math.max(1, getWidth() - RIGHT_PADDING);
+    }
+
+    private String getRowText(int row) {
+        String text = history.get(base + row);
+        return text != null ? text : "<i>[unavailable]</i>";
+    }
+
+    private int measure(String html, int width) {
+        stamp.setText("<html>" + html + "</html>");
+        // a fixed width makes the editor wrap and report the wrapped height
+        stamp.setSize(width, Short.MAX_VALUE);
+        return stamp.getPreferredSize().height;
+    }
+
+    /**
+     * Rebuilds the prefix sums after row from (offsets[from] must be right)
+     */
+    private void updateOffsets(int from) {
+        for (int i = from; i < rowCount; i++) {
+            offsets[i + 1] = offsets[i] + heights[i] + ROW_GAP;
+        }
+    }
+
+    /**
+     * @param y
+     * @return the row covering y, or the last row if y is past the end
+     */
+    private int rowAt(int y) {
+        int index = Arrays.binarySearch(offsets, 0, rowCount + 1, y);
+        if (index < 0) {
+            index = -index - 2; // insertion point - 1
+        }
+        return Math.max(0, Math.min(index, rowCount - 1));
+    }
+
+    @Override
+    public void setBounds(int x, int y, int width, int height) {
+        if (width != measuredWidth && measuredWidth != -1) {
+            // wrapping changed, every cached height is stale; rows in view get
+            // measured again as they're painted
+            measured.clear();
+        }
+        measuredWidth = width;
+        super.setBounds(x, y, width, height);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        if (rowCount == 0) {
+            return;
+        }
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        Rectangle visible = getVisibleRect();
+        boolean isAtBottom = visible.y + visible.height >= offsets[rowCount];
+        int width = rowWidth();
+        int first = rowAt(clip.y);
+        int last = first;
+        int firstChanged = -1;
+        int end = clip.y + clip.height;
+        for (int i = first; i < rowCount && offsets[i] < end; i++) {
+            String text = getRowText(i);
+            if (!measured.get(i)) {
+                int height = measure(text, width);
+                measured.set(i);
+                if (height != heights[i]) {
+                    heights[i] = height;
+                    if (firstChanged < 0) {
+                        firstChanged = i;
+                    }
+                }
+            }
+            if (firstChanged >= 0) {
+                // keep the y of the following rows right for this pass
+                offsets[i + 1] = offsets[i] + heights[i] + ROW_GAP;
+            }
+            stamp.setText("<html>" + text + "</html>");
+            rendererPane.paintComponent(g, stamp, this, 0, offsets[i], width, heights[i], true);
+            last = i;
+        }
+        if (firstChanged >= 0) {
+            updateOffsets(last + 1);
+            revalidate();
+            if (isAtBottom) {
+                // stay on the newest row once the corrected height is laid out
+                SwingUtilities.invokeLater(this::scrollToBottom);
+            }
+        }
+        if (first == 0 && base > 0 && !isLoadPending) {
+            // scrolled to the top of the slice, bring in the page before it
+            isLoadPending = true;
+            SwingUtilities.invokeLater(this::loadOlderRows);
+        }
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        if (isPreferredSizeSet()) {
+            return super.getPreferredSize();
+        }
+        return new Dimension(0, offsets[rowCount]);
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? estimatedHeight : 10;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? visibleRect.height - estimatedHeight : visibleRect.width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return true; // rows wrap to the viewport instead of scrolling sideways
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+}
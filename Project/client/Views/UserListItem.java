@@ -2,69 +2,56 @@ package Project.Client.Views;
 
 import java.awt.BorderLayout;
 import java.awt.Color;
-import java.awt.Dimension;
+import java.awt.Component;
 import java.awt.Font;
 import javax.swing.BorderFactory;
-import javax.swing.JEditorPane;
+import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JPanel;
-import javax.swing.JScrollPane;
-import javax.swing.SwingUtilities;
-import javax.swing.border.EmptyBorder;
+import javax.swing.ListCellRenderer;
+import javax.swing.border.Border;
 
 /**
- * UserListItem represents a user entry in the user list.
+ * UserListItem draws a user entry in the user list.
+ * <p>
+ * It's the list's cell renderer: one instance is restyled for each row as
+ * it's painted instead of every user having a component of their own.
+ * </p>
  */
-public class UserListItem extends JPanel {
-    private JEditorPane textContainer;
-    private boolean isMuted;
-    private boolean isLastSender;
+public class UserListItem extends JPanel implements ListCellRenderer<UserListModel.User> {
+    // same outer size either way so the fixed row height fits both
+    private static final Border LAST_SENDER_BORDER = BorderFactory.createLineBorder(Color.BLUE, 2);
+    private static final Border PLAIN_BORDER = BorderFactory.createEmptyBorder(2, 2, 2, 2);
+
+    private JLabel textContainer;
+    private Font plainFont;
+    private Font boldFont;
 
     /**
      * Constructor to create a UserListItem.
-     *
-     * @param clientId   The ID of the client.
-     * @param clientName The name of the client.
-     * @param parent     The parent container to calculate available width.
      */
-    public UserListItem(long clientId, String clientName, JPanel parent) {
-        textContainer = new JEditorPane("text/plain", clientName);
-        textContainer.setName(Long.toString(clientId));
-        textContainer.setEditable(false);
-        textContainer.setBorder(new EmptyBorder(0, 0, 0, 0)); // Add padding
-
-        // Account for the width of the vertical scrollbar
-        JScrollPane parentScrollPane = (JScrollPane) SwingUtilities.getAncestorOfClass(JScrollPane.class, parent);
-        int scrollBarWidth = parentScrollPane.getVerticalScrollBar().getPreferredSize().width;
+    public UserListItem() {
+        textContainer = new JLabel();
+        plainFont = textContainer.getFont().deriveFont(Font.PLAIN);
+        boldFont = textContainer.getFont().deriveFont(Font.BOLD);
 
-        // Adjust the width of the text container
-        int availableWidth = parent.getWidth() - scrollBarWidth - 10; // Subtract an additional padding
-        textContainer.setSize(new Dimension(availableWidth, Integer.MAX_VALUE));
-        Dimension d = textContainer.getPreferredSize();
-        textContainer.setPreferredSize(new Dimension(availableWidth, d.height));
-
-        // Clear background and border
-        textContainer.setOpaque(false);
-        textContainer.setBorder(BorderFactory.createEmptyBorder());
-        textContainer.setBackground(new Color(0, 0, 0, 0));
+        // Clear background
+        this.setOpaque(false);
 
         this.setLayout(new BorderLayout());
         this.add(textContainer, BorderLayout.CENTER);
-
-        updateAppearance();
-
-    }
-
-    public void setMuted(boolean muted) {
-        this.isMuted = muted;
-        updateAppearance();
     }
 
-    public void setLastSender(boolean lastSender) {
-        this.isLastSender = lastSender;
-        updateAppearance();
+    @Override
+    public Component getListCellRendererComponent(JList<? extends UserListModel.User> list,
+            UserListModel.User user, int index, boolean isSelected, boolean cellHasFocus) {
+        textContainer.setText(user.getClientName());
+        textContainer.setName(Long.toString(user.getClientId()));
+        updateAppearance(user.isMuted(), user.isLastSender());
+        return this;
     }
 
-    private void updateAppearance() {
+    private void updateAppearance(boolean isMuted, boolean isLastSender) {
         if (isMuted) {
             textContainer.setForeground(Color.RED);
         } else {
@@ -72,14 +59,11 @@ public class UserListItem extends JPanel {
         }
 
         if (isLastSender) {
-            textContainer.setFont(textContainer.getFont().deriveFont(Font.BOLD));
-            this.setBorder(BorderFactory.createLineBorder(Color.BLUE, 2));
+            textContainer.setFont(boldFont);
+            this.setBorder(LAST_SENDER_BORDER);
         } else {
-            textContainer.setFont(textContainer.getFont().deriveFont(Font.PLAIN));
-            this.setBorder(BorderFactory.createEmptyBorder());
+            textContainer.setFont(plainFont);
+            this.setBorder(PLAIN_BORDER);
         }
-
-        this.revalidate();
-        this.repaint();
     }
-}
\ No newline at end of file
+}
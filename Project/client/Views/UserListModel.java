@@ -0,0 +1,172 @@
+package Project.Client.Views;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import javax.swing.AbstractListModel;
+
+/**
+ * List model for the user list, keyed by client id.
+ * <p>
+ * Users sit in an ArrayList with an id to index map beside it, so adds,
+ * removes and appearance changes are O(1) and only fire an event for the rows
+ * they touch. A remove moves the last user into the freed slot rather than
+ * shifting everyone after it, so the order is join order until someone
+ * leaves.
+ * </p>
+ * Must only be used from the EDT.
+ */
+public class UserListModel extends AbstractListModel<UserListModel.User> {
+    /**
+     * One row of the user list
+     */
+    public static class User {
+        private final long clientId;
+        private final String clientName;
+        private boolean isMuted;
+        private boolean isLastSender;
+
+        public User(long clientId, String clientName) {
+            this.clientId = clientId;
+            this.clientName = clientName;
+        }
+
+        public long getClientId() {
+            return clientId;
+        }
+
+        public String getClientName() {
+            return clientName;
+        }
+
+        public boolean isMuted() {
+            return isMuted;
+        }
+
+        public boolean isLastSender() {
+            return isLastSender;
+        }
+    }
+
+    private final List<User> users = new ArrayList<>();
+    private final HashMap<Long, Integer> indexes = new HashMap<>(); // client id -> row
+
+    @Override
+    public int getSize() {
+        return users.size();
+    }
+
+    @Override
+    public User getElementAt(int index) {
+        return users.get(index);
+    }
+
+    public boolean contains(long clientId) {
+        return indexes.containsKey(clientId);
+    }
+
+    /**
+     * @param clientId
+     * @param clientName
+     * @return false if the user is already listed
+     */
+    public boolean add(long clientId, String clientName) {
+        if (indexes.containsKey(clientId)) {
+            return false;
+        }
+        int index = users.size();
+        users.add(new User(clientId, clientName));
+        indexes.put(clientId, index);
+        fireIntervalAdded(this, index, index);
+        return true;
+    }
+
+    /**
+     * Adds everyone not listed yet with a single event, so a roster costs one
+     * layout and repaint however big it is
+     *
+     * @param clientIds
+     * @param clientNames same order as the ids
+     * @return how many were added
+     */
+    public int addAll(long[] clientIds, String[] clientNames) {
+        int first = users.size();
+        for (int i = 0; i < clientIds.length; i++) {
+            if (!indexes.containsKey(clientIds[i])) {
+                indexes.put(clientIds[i], users.size());
+                users.add(new User(clientIds[i], clientNames[i]));
+            }
+        }
+        int added = users.size() - first;
+        if (added > 0) {
+            fireIntervalAdded(this, first, users.size() - 1);
+        }
+        return added;
+    }
+
+    /**
+     * @param clientId
+     * @return false if the user wasn't listed
+     */
+    public boolean remove(long clientId) {
+        Integer index = indexes.remove(clientId);
+        if (index == null) {
+            return false;
+        }
+        int last = users.size() - 1;
+        User moved = users.remove(last);
+        if (index != last) {
+            // fill the hole with the last row instead of shifting the tail up
+            users.set(index, moved);
+            indexes.put(moved.clientId, index);
+            fireContentsChanged(this, index, index);
+        }
+        fireIntervalRemoved(this, last, last);
+        return true;
+    }
+
+    public void clear() {
+        int size = users.size();
+        users.clear();
+        indexes.clear();
+        if (size > 0) {
+            fireIntervalRemoved(this, 0, size - 1);
+        }
+    }
+
+    /**
+     * @param clientId
+     * @param isMuted
+     * @return false if the user isn't listed
+     */
+    public boolean setMuted(long clientId, boolean isMuted) {
+        Integer index = indexes.get(clientId);
+        if (index == null) {
+            return false;
+        }
+        User user = users.get(index);
+        if (user.isMuted != isMuted) {
+            user.isMuted = isMuted;
+            fireContentsChanged(this, index, index);
+        }
+        return true;
+    }
+
+    /**
+     * @param clientId
+     * @param isLastSender
+     * @return false if the user isn't listed
+     */
+    public boolean setLastSender(long clientId, boolean isLastSender) {
+        Integer index = indexes.get(clientId);
+        if (index == null) {
+            return false;
+        }
+        User user = users.get(index);
+        if (user.isLastSender != isLastSender) {
+            user.isLastSender = isLastSender;
+            fireContentsChanged(this, index, index);
+        }
+        return true;
+    }
+}
@@ -2,29 +2,24 @@ package Project.Client.Views;
 
 import Project.Common.LoggerUtil;
 import java.awt.BorderLayout;
-import java.awt.Dimension;
-import java.awt.GridBagConstraints;
-import java.awt.GridBagLayout;
-import java.awt.Insets;
-import java.awt.event.ComponentAdapter;
-import java.awt.event.ComponentEvent;
-import java.awt.event.ContainerEvent;
-import java.awt.event.ContainerListener;
-import java.util.HashMap;
-import javax.swing.Box;
+import javax.swing.JList;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.ScrollPaneConstants;
-import javax.swing.SwingUtilities;
 import javax.swing.border.EmptyBorder;
 
 /**
  * UserListPanel represents a UI component that displays a list of users.
+ * <p>
+ * Users are rows of a {@link UserListModel} drawn by one
+ * {@link UserListItem} renderer, and every row is the same height, so an
+ * update only touches its own row and the list never measures the whole
+ * roster. The update methods must be called on the EDT.
+ * </p>
  */
 public class UserListPanel extends JPanel {
-    private JPanel userListArea;
-    private GridBagConstraints lastConstraints; // Keep track of the last constraints for the glue
-    private HashMap<Long, UserListItem> userItemsMap; // Maintain a map of client IDs to UserListItems
+    private JList<UserListModel.User> userList;
+    private UserListModel userListModel;
 
     private long lastSenderId = -1;
 
@@ -34,56 +29,22 @@ public class UserListPanel extends JPanel {
      */
     public UserListPanel() {
         super(new BorderLayout(10, 10));
-        userItemsMap = new HashMap<>(); // Initialize the map
+        userListModel = new UserListModel();
 
-        JPanel content = new JPanel(new GridBagLayout());
-        userListArea = content;
+        userList = new JList<>(userListModel);
+        userList.setCellRenderer(new UserListItem());
+        userList.setFocusable(false);
+        userList.setOpaque(false);
+        // sizes every row off this one instead of rendering each user to measure it
+        userList.setPrototypeCellValue(new UserListModel.User(0, "Username (0000)"));
 
         // Wraps a viewport to provide scroll capabilities
-        JScrollPane scroll = new JScrollPane(userListArea);
+        JScrollPane scroll = new JScrollPane(userList);
         scroll.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
         scroll.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED);
         scroll.setBorder(new EmptyBorder(0, 0, 0, 0)); // Remove border
 
         this.add(scroll, BorderLayout.CENTER);
-
-        userListArea.addContainerListener(new ContainerListener() {
-            @Override
-            public void componentAdded(ContainerEvent e) {
-                if (userListArea.isVisible()) {
-                    SwingUtilities.invokeLater(() -> {
-                        userListArea.revalidate();
-                        userListArea.repaint();
-                    });
-                }
-            }
-
-            @Override
-            public void componentRemoved(ContainerEvent e) {
-                if (userListArea.isVisible()) {
-                    SwingUtilities.invokeLater(() -> {
-                        userListArea.revalidate();
-                        userListArea.repaint();
-                    });
-                }
-            }
-        });
-
-        // Add vertical glue to push items to the top
-        lastConstraints = new GridBagConstraints();
-        lastConstraints.gridx = 0;
-        lastConstraints.gridy = GridBagConstraints.RELATIVE;
-        lastConstraints.weighty = 1.0;
-        lastConstraints.fill = GridBagConstraints.VERTICAL;
-        userListArea.add(Box.createVerticalGlue(), lastConstraints);
-
-        // Listen for resize events to adjust user list items accordingly
-        this.addComponentListener(new ComponentAdapter() {
-            @Override
-            public void componentResized(ComponentEvent e) {
-                SwingUtilities.invokeLater(() -> adjustUserListItemsWidth());
-            }
-        });
     }
 
     /**
@@ -93,57 +54,22 @@ public class UserListPanel extends JPanel {
      * @param clientName The name of the client.
      */
     protected void addUserListItem(long clientId, String clientName) {
-        SwingUtilities.invokeLater(() -> {
-            if (userItemsMap.containsKey(clientId)) {
-                LoggerUtil.INSTANCE.warning("User already in the list: " + clientName);
-                return; // User already in the list
-            }
-
-            LoggerUtil.INSTANCE.info("Adding user to list: " + clientName);
-
-            UserListItem userItem = new UserListItem(clientId, clientName, userListArea);
-
-            // GridBagConstraints settings for each user
-            GridBagConstraints gbc = new GridBagConstraints();
-            gbc.gridx = 0; // Column index 0
-            gbc.gridy = userListArea.getComponentCount() - 1; // Place before the glue
-            gbc.weightx = 1; // Let the component grow horizontally to fill the space
-            gbc.anchor = GridBagConstraints.NORTH; // Anchor to the top
-            gbc.fill = GridBagConstraints.HORIZONTAL; // Fill horizontally
-            gbc.insets = new Insets(0, 0, 5, 0); // Add spacing between users
-
-            // Remove the last glue component if it exists
-            if (lastConstraints != null) {
-                int index = userListArea.getComponentCount() - 1;
-                if (index > -1) {
-                    userListArea.remove(index);
-                }
-            }
-            // Add user item
-            userListArea.add(userItem, gbc);
-
-            // Add vertical glue to push items to the top
-            userListArea.add(Box.createVerticalGlue(), lastConstraints);
-
-            userItemsMap.put(clientId, userItem); // Add to the map
-
-            userListArea.revalidate();
-            userListArea.repaint();
-        });
+        if (!userListModel.add(clientId, clientName)) {
+            LoggerUtil.INSTANCE.warning("User already in the list: " + clientName);
+            return; // User already in the list
+        }
+        LoggerUtil.INSTANCE.fine(() -> "Adding user to list: " + clientName);
     }
 
     /**
-     * Adjusts the width of all user list items.
+     * Adds many users at once (e.g. a room roster) with a single repaint.
+     *
+     * @param clientIds   The IDs of the clients.
+     * @param clientNames The names of the clients, same order as the IDs.
      */
-    private void adjustUserListItemsWidth() {
-        SwingUtilities.invokeLater(() -> {
-            for (UserListItem item : userItemsMap.values()) {
-                item.setPreferredSize(
-                        new Dimension(userListArea.getWidth() - 20, item.getPreferredSize().height));
-            }
-            userListArea.revalidate();
-            userListArea.repaint();
-        });
+    protected void addUserListItems(long[] clientIds, String[] clientNames) {
+        LoggerUtil.INSTANCE.info(() -> "Adding " + clientIds.length + " users to list");
+        userListModel.addAll(clientIds, clientNames);
     }
 
     /**
@@ -152,52 +78,34 @@ public class UserListPanel extends JPanel {
      * @param clientId The ID of the client to be removed.
      */
     protected void removeUserListItem(long clientId) {
-        SwingUtilities.invokeLater(() -> {
-            LoggerUtil.INSTANCE.info("Removing user list item for id " + clientId);
-            UserListItem item = userItemsMap.remove(clientId); // Remove from the map
-            if (item != null) {
-                userListArea.remove(item);
-                userListArea.revalidate();
-                userListArea.repaint();
-            }
-        });
+        LoggerUtil.INSTANCE.fine(() -> "Removing user list item for id " + clientId);
+        userListModel.remove(clientId);
+        if (clientId == lastSenderId) {
+            lastSenderId = -1;
+        }
     }
 
     /**
      * Clears the user list.
      */
     protected void clearUserList() {
-        SwingUtilities.invokeLater(() -> {
-            LoggerUtil.INSTANCE.info("Clearing user list");
-            userItemsMap.clear(); // Clear the map
-            userListArea.removeAll();
-            userListArea.revalidate();
-            userListArea.repaint();
-        });
+        LoggerUtil.INSTANCE.info("Clearing user list");
+        userListModel.clear();
+        lastSenderId = -1;
     }
-    
+
     public void updateUserMuteStatus(long clientId, boolean isMuted) {
-        SwingUtilities.invokeLater(() -> {
-            UserListItem item = userItemsMap.get(clientId);
-            if (item != null) {
-                item.setMuted(isMuted);
-            }
-        });
+        userListModel.setMuted(clientId, isMuted);
     }
 
     public void updateLastSender(long clientId) {
-        SwingUtilities.invokeLater(() -> {
-            if (lastSenderId != -1) {
-                UserListItem lastItem = userItemsMap.get(lastSenderId);
-                if (lastItem != null) {
-                    lastItem.setLastSender(false);
-                }
-            }
-            UserListItem newLastItem = userItemsMap.get(clientId);
-            if (newLastItem != null) {
-                newLastItem.setLastSender(true);
-            }
-            lastSenderId = clientId;
-        });
+        if (clientId == lastSenderId) {
+            return; // already highlighted
+        }
+        if (lastSenderId != -1) {
+            userListModel.setLastSender(lastSenderId, false);
+        }
+        userListModel.setLastSender(clientId, true);
+        lastSenderId = clientId;
     }
-}
\ No newline at end of file
+}
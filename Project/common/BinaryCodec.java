@@ -0,0 +1,376 @@
+package Project.Common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact binary encoding of every Payload type, used instead of Java
+ * serialization once both sides agree on it during CLIENT_CONNECT.
+ * <p>
+ * Body layout (after the FrameCodec length header):
+ * </p>
+ * <ul>
+ * <li>version byte ({@link #VERSION}); Java serialization bodies always start
+ * with 0xAC so the two can be told apart per frame</li>
+ * <li>kind byte (which Payload class)</li>
+ * <li>PayloadType ordinal as a varint</li>
+ * <li>client id as a zigzag varint (ids can be -1)</li>
+ * <li>message as a UTF-8 string</li>
+ * <li>subclass fields</li>
+ * </ul>
+ * Strings are a varint of (byte length + 1) followed by UTF-8 bytes, with 0
+ * meaning null.
+ */
+public final class BinaryCodec {
+    /**
+     * Wire version written as the first body byte
+     */
+    public static final byte VERSION = 1;
+
+    private static final byte KIND_PAYLOAD = 0;
+    private static final byte KIND_CONNECTION = 1;
+    private static final byte KIND_ROLL = 2;
+    private static final byte KIND_ROOM_RESULTS = 3;
+    private static final byte KIND_ROOM_ROSTER = 4;
+    private static final byte KIND_PRESENCE_DELTA = 5;
+
+    private static final PayloadType[] TYPES = PayloadType.values();
+
+    private BinaryCodec() {
+    }
+
+    /**
+     * @param payload
+     * @return true if the payload's class has a binary layout (unknown
+     *         subclasses fall back to Java serialization)
+     */
+    public static boolean supports(Payload payload) {
+        return kindOf(payload) >= 0;
+    }
+
+    /**
+     * Encodes the payload as a complete frame (length header included)
+     *
+     * @param payload
+     * @return frame bytes
+     * @throws IOException if the payload's class isn't supported
+     */
+    public static byte[] encode(Payload payload) throws IOException {
+        byte kind = kindOf(payload);
+        if (kind < 0) {
+            throw new IOException("No binary layout for " + payload.getClass().getName());
+        }
+        ByteWriter writer = new ByteWriter(64);
+        writer.skip(FrameCodec.HEADER_SIZE);
+        writer.writeByte(VERSION);
+        writer.writeByte(kind);
+        writer.writeVarInt(payload.getPayloadType() == null ? 0 : payload.getPayloadType().ordinal() + 1);
+        writer.writeVarLong(zigzag(payload.getClientId()));
+        writer.writeString(payload.getMessage());
+        switch (kind) {
+            case KIND_CONNECTION:
+                ConnectionPayload cp = (ConnectionPayload) payload;
+                writer.writeString(cp.getClientName());
+                writer.writeByte((byte) (cp.isConnect() ? 1 : 0));
+                writer.writeByte(cp.getWireVersion());
+                break;
+            case KIND_ROLL:
+                RollPayload rp = (RollPayload) payload;
+                writer.writeVarInt(rp.getQuantity());
+                writer.writeVarInt(rp.getSides());
+                writer.writeByte((byte) (rp.isSimpleRoll() ? 1 : 0));
+                break;
+            case KIND_ROOM_RESULTS:
+                List<String> rooms = ((RoomResultsPayload) payload).getRooms();
+                int count = rooms == null ? 0 : rooms.size();
+                writer.writeVarInt(count);
+                for (int i = 0; i < count; i++) {
+                    writer.writeString(rooms.get(i));
+                }
+                break;
+            case KIND_ROOM_ROSTER:
+                RoomRosterPayload roster = (RoomRosterPayload) payload;
+                writeMembers(writer, roster.getClientIds(), roster.getClientNames());
+                break;
+            case KIND_PRESENCE_DELTA:
+                PresenceDeltaPayload delta = (PresenceDeltaPayload) payload;
+                writeMembers(writer, delta.getJoinedIds(), delta.getJoinedNames());
+                writeMembers(writer, delta.getLeftIds(), delta.getLeftNames());
+                break;
+            default:
+                break;
+        }
+        return writer.toFrame();
+    }
+
+    /**
+     * Decodes a binary body (without the length header)
+     *
+     * @param body
+     * @param offset start of the body (the version byte)
+     * @param length number of body bytes
+     * @return the decoded Payload
+     * @throws IOException on truncated or unknown data
+     */
+    public static Payload decode(byte[] body, int offset, int length) throws IOException {
+        ByteReader reader = new ByteReader(body, offset, length);
+        byte version = reader.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary wire version: " + version);
+        }
+        byte kind = reader.readByte();
+        Payload payload;
+        switch (kind) {
+            case KIND_PAYLOAD:
+                payload = new Payload();
+                break;
+            case KIND_CONNECTION:
+                payload = new ConnectionPayload();
+                break;
+            case KIND_ROLL:
+                payload = new RollPayload();
+                break;
+            case KIND_ROOM_RESULTS:
+                payload = new RoomResultsPayload();
+                break;
+            case KIND_ROOM_ROSTER:
+                payload = new RoomRosterPayload();
+                break;
+            case KIND_PRESENCE_DELTA:
+                payload = new PresenceDeltaPayload();
+                break;
+            default:
+                throw new IOException("Unknown payload kind: " + kind);
+        }
+        int type = reader.readVarInt();
+        if (type > TYPES.length) {
+            throw new IOException("Unknown payload type: " + type);
+        }
+        payload.setPayloadType(type == 0 ? null : TYPES[type - 1]);
+        payload.setClientId(unzigzag(reader.readVarLong()));
+        payload.setMessage(reader.readString());
+        switch (kind) {
+            case KIND_CONNECTION:
+                ConnectionPayload cp = (ConnectionPayload) payload;
+                cp.setClientName(reader.readString());
+                cp.setConnect(reader.readByte() != 0);
+                cp.setWireVersion(reader.readByte());
+                break;
+            case KIND_ROLL:
+                RollPayload rp = (RollPayload) payload;
+                rp.setQuantity(reader.readVarInt());
+                rp.setSides(reader.readVarInt());
+                rp.setSimpleRoll(reader.readByte() != 0);
+                break;
+            case KIND_ROOM_RESULTS:
+                int count = reader.readVarInt();
+                List<String> rooms = new ArrayList<>(Math.min(count, length));
+                for (int i = 0; i < count; i++) {
+                    rooms.add(reader.readString());
+                }
+                ((RoomResultsPayload) payload).setRooms(rooms);
+                break;
+            case KIND_ROOM_ROSTER:
+                int members = readMemberCount(reader, length);
+                long[] ids = new long[members];
+                String[] names = new String[members];
+                readMembers(reader, ids, names);
+                ((RoomRosterPayload) payload).setClients(ids, names);
+                break;
+            case KIND_PRESENCE_DELTA:
+                PresenceDeltaPayload delta = (PresenceDeltaPayload) payload;
+                int joined = readMemberCount(reader, length);
+                long[] joinedIds = new long[joined];
+                String[] joinedNames = new String[joined];
+                readMembers(reader, joinedIds, joinedNames);
+                delta.setJoined(joinedIds, joinedNames);
+                int left = readMemberCount(reader, length);
+                long[] leftIds = new long[left];
+                String[] leftNames = new String[left];
+                readMembers(reader, leftIds, leftNames);
+                delta.setLeft(leftIds, leftNames);
+                break;
+            default:
+                break;
+        }
+        return payload;
+    }
+
+    private static byte kindOf(Payload payload) {
+        // exact class checks so unknown subclasses aren't silently truncated
+        Class<?> type = payload.getClass();
+        if (type == Payload.class) {
+            return KIND_PAYLOAD;
+        } else if (type == ConnectionPayload.class) {
+            return KIND_CONNECTION;
+        } else if (type == RollPayload.class) {
+            return KIND_ROLL;
+        } else if (type == RoomResultsPayload.class) {
+            return KIND_ROOM_RESULTS;
+        } else if (type == RoomRosterPayload.class) {
+            return KIND_ROOM_ROSTER;
+        } else if (type == PresenceDeltaPayload.class) {
+            return KIND_PRESENCE_DELTA;
+        }
+        return -1;
+    }
+
+    /**
+     * Writes parallel id/name arrays as a count followed by (id, name) pairs
+     */
+    private static void writeMembers(ByteWriter writer, long[] ids, String[] names) {
+        writer.writeVarInt(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            writer.writeVarLong(zigzag(ids[i]));
+            writer.writeString(names[i]);
+        }
+    }
+
+    private static int readMemberCount(ByteReader reader, int length) throws IOException {
+        int count = reader.readVarInt();
+        if (count < 0 || count > length) { // every member takes at least 2 bytes
+            throw new IOException("Invalid member count: " + count);
+        }
+        return count;
+    }
+
+    private static void readMembers(ByteReader reader, long[] ids, String[] names) throws IOException {
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = unzigzag(reader.readVarLong());
+            names[i] = reader.readString();
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Growable byte array writer
+     */
+    private static class ByteWriter {
+        private byte[] buffer;
+        private int position;
+
+        ByteWriter(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        private void ensure(int extra) {
+            if (position + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+            }
+        }
+
+        void skip(int count) {
+            ensure(count);
+            position += count;
+        }
+
+        void writeByte(byte value) {
+            ensure(1);
+            buffer[position++] = value;
+        }
+
+        void writeVarInt(int value) {
+            writeVarLong(value & 0xFFFFFFFFL);
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(utf8.length + 1);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, buffer, position, utf8.length);
+            position += utf8.length;
+        }
+
+        /**
+         * @return the bytes with the FrameCodec length header filled in
+         */
+        byte[] toFrame() {
+            byte[] frame = Arrays.copyOf(buffer, position);
+            int length = position - FrameCodec.HEADER_SIZE;
+            frame[0] = (byte) (length >>> 24);
+            frame[1] = (byte) (length >>> 16);
+            frame[2] = (byte) (length >>> 8);
+            frame[3] = (byte) length;
+            return frame;
+        }
+    }
+
+    /**
+     * Bounds-checked reader over part of a byte array
+     */
+    private static class ByteReader {
+        private final byte[] buffer;
+        private final int limit;
+        private int position;
+
+        ByteReader(byte[] buffer, int offset, int length) {
+            this.buffer = buffer;
+            this.position = offset;
+            this.limit = offset + length;
+        }
+
+        byte readByte() throws IOException {
+            if (position >= limit) {
+                throw new IOException("Truncated binary payload");
+            }
+            return buffer[position++];
+        }
+
+        int readVarInt() throws IOException {
+            long value = readVarLong();
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw new IOException("Varint out of range: " + value);
+            }
+            return (int) value;
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        String readString() throws IOException {
+            int size = readVarInt();
+            if (size == 0) {
+                return null;
+            }
+            int byteLength = size - 1;
+            if (byteLength > limit - position) {
+                throw new IOException("Truncated binary payload");
+            }
+            String value = new String(buffer, position, byteLength, StandardCharsets.UTF_8);
+            position += byteLength;
+            return value;
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package Project.Common;
 
 public class ConnectionPayload extends Payload {
+    // pinned to what it was before wireVersion was added, so clients from before
+    // framing can still deserialize it (the field defaults to LEGACY_VERSION)
+    private static final long serialVersionUID = -8870488055283656886L;
     private String clientName;
     private boolean isConnect;
+    private byte wireVersion; // CLIENT_CONNECT: newest version the client speaks, CLIENT_ID: negotiated version
 
     public ConnectionPayload(){
         setPayloadType(PayloadType.CLIENT_CONNECT);
@@ -24,6 +28,14 @@ public class ConnectionPayload extends Payload {
         this.isConnect = isConnect;
     }
 
+    public byte getWireVersion() {
+        return wireVersion;
+    }
+
+    public void setWireVersion(byte wireVersion) {
+        this.wireVersion = wireVersion;
+    }
+
     
 
     @Override
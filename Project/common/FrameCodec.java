@@ -0,0 +1,208 @@
+package Project.Common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamConstants;
+
+/**
+ * Length-prefixed framing for Payloads.
+ * <p>
+ * Each frame is a 4 byte big-endian length followed by that many bytes of body.
+ * Framing lets the non-blocking server know when a full Payload has arrived
+ * without needing a blocking ObjectInputStream per connection.
+ * </p>
+ * <p>
+ * The body is either Java serialization ({@link #LEGACY_VERSION}) or the
+ * {@link BinaryCodec} format. Decoding tells them apart by the first body byte,
+ * so a connection can switch encodings after the handshake without any
+ * ambiguity.
+ * </p>
+ * <p>
+ * Clients from before framing write one unframed ObjectOutputStream, which
+ * starts with {@link #LEGACY_STREAM_MAGIC}. The server recognizes that in
+ * place of the first length header and keeps talking to them that way, see
+ * {@link #toLegacyStream(byte[])}.
+ * </p>
+ */
+public final class FrameCodec {
+    /**
+     * Size of the length prefix in bytes
+     */
+    public static final int HEADER_SIZE = 4;
+    /**
+     * Upper bound on a single frame body; anything larger is treated as a
+     * corrupt/hostile stream
+     */
+    public static final int MAX_FRAME_SIZE = 1024 * 1024; // 1MB
+    /**
+     * Wire version for Java serialized bodies (always understood)
+     */
+    public static final byte LEGACY_VERSION = 0;
+    /**
+     * Newest wire version this build can speak
+     */
+    public static final byte CURRENT_VERSION = BinaryCodec.VERSION;
+    /**
+     * Java serialization stream header (magic 0xACED, version 5), the first 4
+     * bytes an unframed client sends. Read as a length it's negative, so it's
+     * never a valid frame.
+     */
+    public static final int LEGACY_STREAM_MAGIC = (ObjectStreamConstants.STREAM_MAGIC << 16)
+            | ObjectStreamConstants.STREAM_VERSION;
+    private static final byte[] LEGACY_STREAM_HEADER = { (byte) (LEGACY_STREAM_MAGIC >>> 24),
+            (byte) (LEGACY_STREAM_MAGIC >>> 16), (byte) (LEGACY_STREAM_MAGIC >>> 8), (byte) LEGACY_STREAM_MAGIC };
+
+    private FrameCodec() {
+    }
+
+    /**
+     * Picks the wire version both sides can use
+     *
+     * @param requested version advertised by the peer
+     * @return the highest version supported by both
+     */
+    public static byte negotiate(byte requested) {
+        return requested >= CURRENT_VERSION ? CURRENT_VERSION : LEGACY_VERSION;
+    }
+
+    /**
+     * Encodes the payload with the given wire version
+     *
+     * @param payload
+     * @param wireVersion {@link #LEGACY_VERSION} or {@link BinaryCodec#VERSION}
+     * @return a complete frame ready to be written to a socket
+     * @throws IOException
+     */
+    public static byte[] encode(Payload payload, byte wireVersion) throws IOException {
+        if (wireVersion == BinaryCodec.VERSION && BinaryCodec.supports(payload)) {
+            return BinaryCodec.encode(payload);
+        }
+        return encode(payload);
+    }
+
+    /**
+     * Serializes the payload and prepends the length header
+     *
+     * @param payload
+     * @return a complete frame ready to be written to a socket
+     * @throws IOException
+     */
+    public static byte[] encode(Payload payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        // reserve room for the header, it's filled in once the body size is known
+        bytes.write(new byte[HEADER_SIZE]);
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(payload);
+        }
+        byte[] frame = bytes.toByteArray();
+        writeLength(frame, frame.length - HEADER_SIZE);
+        return frame;
+    }
+
+    /**
+     * Decodes a single frame body (without the length header), detecting the
+     * wire version from its first byte
+     *
+     * @param body   buffer holding the body
+     * @param offset start of the body
+     * @param length number of body bytes
+     * @return the decoded Payload
+     * @throws IOException
+     */
+    public static Payload decode(byte[] body, int offset, int length) throws IOException {
+        if (length > 0 && body[offset] == BinaryCodec.VERSION) {
+            return BinaryCodec.decode(body, offset, length);
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(body, offset, length))) {
+            return (Payload) ois.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Frame did not contain a Payload", e);
+        }
+    }
+
+    /**
+     * Blocking helper to write a Payload as a frame
+     *
+     * @param out
+     * @param payload
+     * @param wireVersion
+     * @throws IOException
+     */
+    public static void writeFrame(DataOutputStream out, Payload payload, byte wireVersion) throws IOException {
+        out.write(encode(payload, wireVersion));
+        out.flush();
+    }
+
+    /**
+     * Blocking helper to read the next frame
+     *
+     * @param in
+     * @return the decoded Payload
+     * @throws IOException on a closed stream or an invalid frame
+     */
+    public static Payload readFrame(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        checkLength(length);
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return decode(body, 0, length);
+    }
+
+    /**
+     * @return the stream header to send an unframed client before anything
+     *         else, what its ObjectInputStream waits for
+     */
+    public static byte[] legacyStreamHeader() {
+        return LEGACY_STREAM_HEADER.clone();
+    }
+
+    /**
+     * Rewrites a Java serialized frame as the next object on an unframed
+     * client's ObjectInputStream: the length and stream headers are replaced
+     * by a reset, so each object is read with a fresh handle table just as it
+     * was written.
+     *
+     * @param frame a complete {@link #LEGACY_VERSION} frame
+     * @return bytes to write after {@link #legacyStreamHeader()}
+     * @throws IOException if the frame isn't Java serialized
+     */
+    public static byte[] toLegacyStream(byte[] frame) throws IOException {
+        int skip = HEADER_SIZE + LEGACY_STREAM_HEADER.length;
+        if (frame.length <= skip || readLength(frame, HEADER_SIZE) != LEGACY_STREAM_MAGIC) {
+            throw new IOException("Only Java serialized frames can be sent to an unframed client");
+        }
+        byte[] bytes = new byte[frame.length - skip + 1];
+        bytes[0] = ObjectStreamConstants.TC_RESET;
+        System.arraycopy(frame, skip, bytes, 1, frame.length - skip);
+        return bytes;
+    }
+
+    /**
+     * Validates a length header read off the wire
+     *
+     * @param length
+     * @throws IOException if the length is outside the allowed range
+     */
+    public static void checkLength(int length) throws IOException {
+        if (length <= 0 || length > MAX_FRAME_SIZE) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+    }
+
+    private static int readLength(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+
+    private static void writeLength(byte[] frame, int length) {
+        frame[0] = (byte) (length >>> 24);
+        frame[1] = (byte) (length >>> 16);
+        frame[2] = (byte) (length >>> 8);
+        frame[3] = (byte) length;
+    }
+}
@@ -3,9 +3,14 @@ package Project.Common;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.FileHandler;
 import java.util.logging.Formatter;
+import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
@@ -14,13 +19,39 @@ import java.util.logging.Logger;
  * Utility class for logging messages to a log file.
  * This class provides methods to log messages at various levels and ensures
  * thread-safe logging to an appropriate log file.
+ * <p>
+ * In async mode ({@link LoggerConfig#setAsync(boolean)}) records go into a
+ * bounded ring buffer and a background thread writes them to the file and
+ * console, so callers never wait on disk or console I/O. The Supplier and
+ * format/args overloads only build the message if the level will actually
+ * be written.
+ * </p>
  */
 public enum LoggerUtil {
     INSTANCE;
 
+    /**
+     * What async mode does when the ring buffer is full
+     */
+    public enum OverflowPolicy {
+        /**
+         * Discard the record (a count of dropped records is logged later)
+         */
+        DROP,
+        /**
+         * Wait for the background thread to make room
+         */
+        BLOCK
+    }
+
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+
     private Logger logger;
     private LoggerConfig config;
-    private boolean isConfigured = false;
+    private volatile boolean isConfigured = false;
+    private Handler[] handlers = new Handler[0];
+    private volatile AsyncAppender appender; // null in synchronous mode
+    private volatile int threshold = Level.ALL.intValue(); // lowest level any handler writes
 
     LoggerUtil() {
     }
@@ -56,9 +87,11 @@ public enum LoggerUtil {
         public String format(LogRecord record) {
             SimpleDateFormat dateFormat = new SimpleDateFormat(PATTERN);
             String date = dateFormat.format(new Date(record.getMillis()));
-            String callingClass = getCallingClassName();
-            String source = callingClass != null ? callingClass
-                    : record.getSourceClassName() != null ? record.getSourceClassName() : "unknown";
+            // LoggerUtil records the caller when the record is created, it may be
+            // formatted on the async thread
+            String callingClass = record.getSourceClassName() != null ? record.getSourceClassName()
+                    : getCallingClassName();
+            String source = callingClass != null ? callingClass : "unknown";
             String message = formatMessage(record);
             String level = getColoredLevel(record.getLevel());
             String throwable = "";
@@ -124,9 +157,14 @@ public enum LoggerUtil {
     private synchronized void setupLogger() {
         if (isConfigured)
             return;
+        if (config == null) {
+            // used before setConfig (e.g. ChatClient embedded elsewhere), take the defaults
+            config = new LoggerConfig();
+        }
     
         try {
             logger = Logger.getLogger("ApplicationLogger");
+            logger.setUseParentHandlers(false);
     
             // Remove default console handlers
             Logger rootLogger = Logger.getLogger("");
@@ -145,21 +183,83 @@ public enum LoggerUtil {
                     true);
             fileHandler.setFormatter(new CustomFormatter());
             fileHandler.setLevel(config.getFileLogLevel());
-            logger.addHandler(fileHandler);
     
             // ConsoleHandler prints log messages to the console
             ConsoleHandler consoleHandler = new ConsoleHandler();
             consoleHandler.setFormatter(new CustomFormatter());
             consoleHandler.setLevel(config.getConsoleLogLevel());
-            logger.addHandler(consoleHandler);
-    
+
+            handlers = new Handler[] { fileHandler, consoleHandler };
+            updateThreshold();
             logger.setLevel(Level.ALL);
+            if (config.isAsync()) {
+                // the appender owns the handlers so the JVM's own logging shutdown
+                // can't close them before the buffer is drained
+                appender = new AsyncAppender(handlers, config.getAsyncBufferSize(), config.getOverflowPolicy());
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> appender.shutdown(2000), "log-flush"));
+            } else {
+                for (Handler handler : handlers) {
+                    logger.addHandler(handler);
+                }
+            }
             isConfigured = true;
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    private void updateThreshold() {
+        int lowest = Level.OFF.intValue();
+        for (Handler handler : handlers) {
+            lowest = Math.min(lowest, handler.getLevel().intValue());
+        }
+        threshold = lowest;
+    }
+
+    /**
+     * Changes the file and console levels at runtime
+     * 
+     * @param level the new minimum level for both outputs
+     */
+    public void setLevel(Level level) {
+        if (!isConfigured)
+            setupLogger();
+        for (Handler handler : handlers) {
+            handler.setLevel(level);
+        }
+        updateThreshold();
+    }
+
+    /**
+     * @return the lowest level currently written anywhere
+     */
+    public Level getLevel() {
+        for (Handler handler : handlers) {
+            if (handler.getLevel().intValue() == threshold) {
+                return handler.getLevel();
+            }
+        }
+        return Level.ALL;
+    }
+
+    /**
+     * Cheap check callers can use before building an expensive message
+     * 
+     * @param level
+     * @return true if a message at this level would be written
+     */
+    public boolean isLoggable(Level level) {
+        return level.intValue() >= threshold && threshold != Level.OFF.intValue();
+    }
+
+    /**
+     * @return records discarded by async mode's DROP policy so far
+     */
+    public long getDroppedCount() {
+        AsyncAppender current = appender;
+        return current == null ? 0 : current.getTotalDropped();
+    }
+
     /**
      * Logs a message at the specified level.
      * 
@@ -167,9 +267,84 @@ public enum LoggerUtil {
      * @param message the log message
      */
     public void log(Level level, String message) {
+        log(level, message, (Throwable) null);
+    }
+
+    /**
+     * Logs a message built only if the level is enabled.
+     * 
+     * @param level   the level of the log message
+     * @param message supplies the log message
+     */
+    public void log(Level level, Supplier<String> message) {
+        if (!isConfigured)
+            setupLogger();
+        if (isLoggable(level)) {
+            publish(level, message.get(), null);
+        }
+    }
+
+    /**
+     * Logs a String.format style message, formatted only if the level is
+     * enabled.
+     * 
+     * @param level  the level of the log message
+     * @param format format string
+     * @param args   format arguments
+     */
+    public void log(Level level, String format, Object... args) {
         if (!isConfigured)
             setupLogger();
-        logger.log(level, message);
+        if (isLoggable(level)) {
+            publish(level, String.format(format, args), null);
+        }
+    }
+
+    /**
+     * Logs a lazily built informational message.
+     * 
+     * @param message supplies the log message
+     */
+    public void info(Supplier<String> message) {
+        log(Level.INFO, message);
+    }
+
+    /**
+     * Logs a String.format style informational message.
+     * 
+     * @param format format string
+     * @param args   format arguments
+     */
+    public void info(String format, Object... args) {
+        log(Level.INFO, format, args);
+    }
+
+    /**
+     * Logs a lazily built warning message.
+     * 
+     * @param message supplies the log message
+     */
+    public void warning(Supplier<String> message) {
+        log(Level.WARNING, message);
+    }
+
+    /**
+     * Logs a lazily built fine-grained message.
+     * 
+     * @param message supplies the log message
+     */
+    public void fine(Supplier<String> message) {
+        log(Level.FINE, message);
+    }
+
+    /**
+     * Logs a String.format style fine-grained message.
+     * 
+     * @param format format string
+     * @param args   format arguments
+     */
+    public void fine(String format, Object... args) {
+        log(Level.FINE, format, args);
     }
 
     /**
@@ -236,7 +411,174 @@ public enum LoggerUtil {
     public void log(Level level, String message, Throwable throwable) {
         if (!isConfigured)
             setupLogger();
-        logger.log(level, message, throwable);
+        if (isLoggable(level)) {
+            publish(level, message, throwable);
+        }
+    }
+
+    private void publish(Level level, String message, Throwable throwable) {
+        LogRecord record = new LogRecord(level, message);
+        record.setThrown(throwable);
+        record.setLoggerName(logger.getName());
+        // captured here since the record may be formatted on another thread
+        record.setSourceClassName(findCaller());
+        AsyncAppender current = appender;
+        if (current == null) {
+            logger.log(record);
+        } else if (!current.offer(record)) {
+            if (!current.isRunning()) {
+                current.publishDirect(record); // shutting down, write it ourselves
+            }
+        }
+    }
+
+    private static String findCaller() {
+        String loggerUtilPackage = LoggerUtil.class.getPackage().getName();
+        return STACK_WALKER.walk(frames -> frames
+                .map(StackWalker.StackFrame::getClassName)
+                .filter(className -> !className.startsWith(loggerUtilPackage)
+                        && !className.startsWith("java.util.logging"))
+                .findFirst()
+                .orElse(null));
+    }
+
+    /**
+     * Bounded ring buffer of records drained by a single background thread
+     * that writes them to the handlers.
+     */
+    private static final class AsyncAppender implements Runnable {
+        private static final int BATCH_SIZE = 256;
+
+        private final Handler[] handlers;
+        private final LogRecord[] ring;
+        private final OverflowPolicy policy;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+        private final Condition notFull = lock.newCondition();
+        private final Thread thread;
+        private int head = 0; // next record to write
+        private int count = 0;
+        private long dropped = 0; // since the last drop notice
+        private volatile long totalDropped = 0;
+        private volatile boolean isRunning = true;
+
+        AsyncAppender(Handler[] handlers, int capacity, OverflowPolicy policy) {
+            this.handlers = handlers;
+            this.ring = new LogRecord[Math.max(16, capacity)];
+            this.policy = policy;
+            thread = new Thread(this, "log-appender");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        boolean isRunning() {
+            return isRunning;
+        }
+
+        long getTotalDropped() {
+            return totalDropped;
+        }
+
+        /**
+         * @return false if the record wasn't queued (dropped or shut down)
+         */
+        boolean offer(LogRecord record) {
+            lock.lock();
+            try {
+                while (count == ring.length) {
+                    // the appender itself must never wait on its own buffer
+                    if (policy == OverflowPolicy.DROP || !isRunning || Thread.currentThread() == thread) {
+                        dropped++;
+                        totalDropped++;
+                        return false;
+                    }
+                    notFull.awaitUninterruptibly();
+                }
+                if (!isRunning) {
+                    return false;
+                }
+                ring[(head + count) % ring.length] = record;
+                count++;
+                if (count == 1) {
+                    notEmpty.signal();
+                }
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void run() {
+            LogRecord[] batch = new LogRecord[Math.min(BATCH_SIZE, ring.length)];
+            while (true) {
+                int size;
+                long lost;
+                lock.lock();
+                try {
+                    while (count == 0 && isRunning) {
+                        notEmpty.await(1, TimeUnit.SECONDS);
+                    }
+                    if (count == 0) {
+                        return; // shut down and drained
+                    }
+                    size = Math.min(count, batch.length);
+                    for (int i = 0; i < size; i++) {
+                        batch[i] = ring[head];
+                        ring[head] = null;
+                        head = (head + 1) % ring.length;
+                    }
+                    count -= size;
+                    lost = dropped;
+                    dropped = 0;
+                    notFull.signalAll();
+                } catch (InterruptedException e) {
+                    return;
+                } finally {
+                    lock.unlock();
+                }
+                if (lost > 0) {
+                    LogRecord notice = new LogRecord(Level.WARNING,
+                            String.format("Log buffer full, dropped %s records", lost));
+                    notice.setSourceClassName(LoggerUtil.class.getName());
+                    publishDirect(notice);
+                }
+                for (int i = 0; i < size; i++) {
+                    publishDirect(batch[i]);
+                    batch[i] = null;
+                }
+            }
+        }
+
+        synchronized void publishDirect(LogRecord record) {
+            for (Handler handler : handlers) {
+                handler.publish(record);
+            }
+        }
+
+        /**
+         * Stops accepting records and waits for the buffer to be written
+         * 
+         * @param timeoutMs
+         */
+        void shutdown(long timeoutMs) {
+            lock.lock();
+            try {
+                isRunning = false;
+                notEmpty.signalAll();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                thread.join(timeoutMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (Handler handler : handlers) {
+                handler.flush();
+            }
+        }
     }
 
     /**
@@ -279,6 +621,9 @@ public enum LoggerUtil {
         private String logLocation = "application.log";
         private Level fileLogLevel = Level.ALL; // default log level for file
         private Level consoleLogLevel = Level.ALL; // default log level for console
+        private boolean isAsync = false; // write from a background thread
+        private int asyncBufferSize = 8192; // records buffered in async mode
+        private OverflowPolicy overflowPolicy = OverflowPolicy.DROP; // async mode with a full buffer
 
         // Getters and Setters for each property
 
@@ -371,6 +716,60 @@ public enum LoggerUtil {
         public void setConsoleLogLevel(Level consoleLogLevel) {
             this.consoleLogLevel = consoleLogLevel;
         }
+
+        /**
+         * Gets whether records are written by a background thread.
+         * 
+         * @return true for async mode
+         */
+        public boolean isAsync() {
+            return isAsync;
+        }
+
+        /**
+         * Sets whether records are written by a background thread.
+         * 
+         * @param isAsync true for async mode
+         */
+        public void setAsync(boolean isAsync) {
+            this.isAsync = isAsync;
+        }
+
+        /**
+         * Gets how many records async mode buffers.
+         * 
+         * @return the ring buffer capacity
+         */
+        public int getAsyncBufferSize() {
+            return asyncBufferSize;
+        }
+
+        /**
+         * Sets how many records async mode buffers.
+         * 
+         * @param asyncBufferSize the ring buffer capacity
+         */
+        public void setAsyncBufferSize(int asyncBufferSize) {
+            this.asyncBufferSize = asyncBufferSize;
+        }
+
+        /**
+         * Gets what async mode does when the buffer is full.
+         * 
+         * @return the overflow policy
+         */
+        public OverflowPolicy getOverflowPolicy() {
+            return overflowPolicy;
+        }
+
+        /**
+         * Sets what async mode does when the buffer is full.
+         * 
+         * @param overflowPolicy DROP or BLOCK
+         */
+        public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+        }
     }
 
     /**
@@ -1,5 +1,8 @@
 package Project.Common;
 
+/**
+ * Note: BinaryCodec sends the ordinal, so new types should only be appended
+ */
 public enum PayloadType {
     CLIENT_CONNECT, // client requesting to connect to server (passing of initialization data [name])
     CLIENT_ID,  // server sending client id
@@ -14,4 +17,6 @@ public enum PayloadType {
     PRIVATE_MESSAGE,
     MUTE,
     UNMUTE,
+    ROOM_ROSTER, // full member list of a room, sent once to a joiner
+    PRESENCE_DELTA, // batched joins/leaves of a room
 }
@@ -0,0 +1,63 @@
+package Project.Common;
+
+/**
+ * Joins and leaves of a room collected over a short window and sent as one
+ * payload instead of a ROOM_JOIN per change. The message holds the room name;
+ * ids and names are parallel arrays.
+ */
+public class PresenceDeltaPayload extends Payload {
+    private long[] joinedIds = new long[0];
+    private String[] joinedNames = new String[0];
+    private long[] leftIds = new long[0];
+    private String[] leftNames = new String[0];
+
+    public PresenceDeltaPayload() {
+        setPayloadType(PayloadType.PRESENCE_DELTA);
+    }
+
+    public long[] getJoinedIds() {
+        return joinedIds;
+    }
+
+    public String[] getJoinedNames() {
+        return joinedNames;
+    }
+
+    /**
+     * @param ids
+     * @param names same length as ids
+     */
+    public void setJoined(long[] ids, String[] names) {
+        if (ids.length != names.length) {
+            throw new IllegalArgumentException("Joined ids and names must be the same length");
+        }
+        this.joinedIds = ids;
+        this.joinedNames = names;
+    }
+
+    public long[] getLeftIds() {
+        return leftIds;
+    }
+
+    public String[] getLeftNames() {
+        return leftNames;
+    }
+
+    /**
+     * @param ids
+     * @param names same length as ids
+     */
+    public void setLeft(long[] ids, String[] names) {
+        if (ids.length != names.length) {
+            throw new IllegalArgumentException("Left ids and names must be the same length");
+        }
+        this.leftIds = ids;
+        this.leftNames = names;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Payload[%s] Client Id [%s] Message: [%s] Joined [%s] Left [%s]", getPayloadType(),
+                getClientId(), getMessage(), joinedIds.length, leftIds.length);
+    }
+}
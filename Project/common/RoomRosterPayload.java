@@ -0,0 +1,45 @@
+package Project.Common;
+
+/**
+ * Full membership of a room sent to a client when it joins, replacing one
+ * SYNC_CLIENT payload per member. The message holds the room name; ids and
+ * names are parallel arrays.
+ */
+public class RoomRosterPayload extends Payload {
+    private long[] clientIds = new long[0];
+    private String[] clientNames = new String[0];
+
+    public RoomRosterPayload() {
+        setPayloadType(PayloadType.ROOM_ROSTER);
+    }
+
+    public long[] getClientIds() {
+        return clientIds;
+    }
+
+    public String[] getClientNames() {
+        return clientNames;
+    }
+
+    /**
+     * @param clientIds
+     * @param clientNames same length as clientIds
+     */
+    public void setClients(long[] clientIds, String[] clientNames) {
+        if (clientIds.length != clientNames.length) {
+            throw new IllegalArgumentException("Roster ids and names must be the same length");
+        }
+        this.clientIds = clientIds;
+        this.clientNames = clientNames;
+    }
+
+    public int size() {
+        return clientIds.length;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Payload[%s] Client Id [%s] Message: [%s] Members [%s]", getPayloadType(),
+                getClientId(), getMessage(), size());
+    }
+}
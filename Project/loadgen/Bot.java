@@ -0,0 +1,225 @@
+package Project.LoadGen;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import Project.Common.ConnectionPayload;
+import Project.Common.FrameCodec;
+import Project.Common.Payload;
+import Project.Common.PayloadType;
+import Project.Common.RollPayload;
+
+/**
+ * One simulated user: a socket speaking the same protocol as Client, with its
+ * reader on a virtual thread. Message text carries the send time
+ * ("t=&lt;nanoTime&gt;") so recipients in the same JVM can measure delivery
+ * latency.
+ */
+public class Bot {
+    static final String TIMESTAMP_MARKER = "t=";
+    static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    private final int index;
+    private final String name;
+    private final LoadGen.Stats stats;
+    private final CountDownLatch ready = new CountDownLatch(1);
+    // a lock rather than synchronized so a virtual thread blocked on the socket doesn't pin its carrier
+    private final ReentrantLock sendLock = new ReentrantLock();
+    private Socket socket;
+    private DataOutputStream out;
+    private DataInputStream in;
+    private volatile byte wireVersion = FrameCodec.LEGACY_VERSION;
+    private volatile long clientId = -1;
+    private volatile boolean isClosing = false;
+    private volatile String room;
+
+    public Bot(int index, LoadGen.Stats stats) {
+        this.index = index;
+        this.name = "bot" + index;
+        this.stats = stats;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getClientId() {
+        return clientId;
+    }
+
+    public String getRoom() {
+        return room;
+    }
+
+    /**
+     * Opens the socket, starts the reader and sends CLIENT_CONNECT
+     *
+     * @param host
+     * @param port
+     * @param isBinary advertise the binary codec instead of staying on Java
+     *                 serialization
+     * @throws IOException
+     */
+    public void connect(String host, int port, boolean isBinary) throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        Thread.ofVirtual().name("bot-reader-" + index).start(this::readLoop);
+        ConnectionPayload cp = new ConnectionPayload();
+        cp.setClientName(name);
+        cp.setWireVersion(isBinary ? FrameCodec.CURRENT_VERSION : FrameCodec.LEGACY_VERSION);
+        send(cp);
+    }
+
+    /**
+     * @return true once the server assigned an id
+     */
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        return ready.await(timeout, unit);
+    }
+
+    public void createRoom(String room) throws IOException {
+        this.room = room;
+        send(PayloadType.ROOM_CREATE, room);
+    }
+
+    public void joinRoom(String room) throws IOException {
+        this.room = room;
+        send(PayloadType.ROOM_JOIN, room);
+    }
+
+    public void sendMessage() throws IOException {
+        send(PayloadType.MESSAGE, timestamped("load test message from " + name));
+        stats.onSent(PayloadType.MESSAGE);
+    }
+
+    public void sendPrivateMessage(long targetId) throws IOException {
+        Payload p = new Payload();
+        p.setPayloadType(PayloadType.PRIVATE_MESSAGE);
+        p.setClientId(targetId);
+        p.setMessage(timestamped("psst from " + name));
+        send(p);
+        stats.onSent(PayloadType.PRIVATE_MESSAGE);
+    }
+
+    public void sendRoll() throws IOException {
+        RollPayload roll = new RollPayload();
+        roll.setClientId(clientId);
+        roll.setSimpleRoll(false);
+        roll.setQuantity(2);
+        roll.setSides(6);
+        send(roll);
+        stats.onSent(PayloadType.ROLL);
+    }
+
+    public void sendFlip() throws IOException {
+        Payload flip = new Payload();
+        flip.setPayloadType(PayloadType.FLIP);
+        flip.setClientId(clientId);
+        send(flip);
+        stats.onSent(PayloadType.FLIP);
+    }
+
+    /**
+     * Plain text only, chat markup characters would be rewritten by the
+     * server's formatter
+     */
+    private static String timestamped(String text) {
+        return text + " " + TIMESTAMP_MARKER + System.nanoTime();
+    }
+
+    private void send(PayloadType type, String message) throws IOException {
+        Payload p = new Payload();
+        p.setPayloadType(type);
+        p.setMessage(message);
+        send(p);
+    }
+
+    private void send(Payload payload) throws IOException {
+        sendLock.lock();
+        try {
+            FrameCodec.writeFrame(out, payload, wireVersion);
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    private void readLoop() {
+        try {
+            while (!isClosing) {
+                Payload payload = FrameCodec.readFrame(in);
+                switch (payload.getPayloadType()) {
+                    case CLIENT_ID:
+                        ConnectionPayload cp = (ConnectionPayload) payload;
+                        wireVersion = FrameCodec.negotiate(cp.getWireVersion());
+                        clientId = cp.getClientId();
+                        ready.countDown();
+                        break;
+                    case MESSAGE:
+                        stats.onDelivered(parseTimestamp(payload.getMessage()));
+                        break;
+                    default:
+                        stats.onOther();
+                        break;
+                }
+            }
+        } catch (IOException e) {
+            if (!isClosing) {
+                stats.onConnectionLost();
+            }
+        }
+    }
+
+    /**
+     * @return the embedded send time, or NO_TIMESTAMP for messages without one
+     *         (rolls, flips, server notices)
+     */
+    static long parseTimestamp(String message) {
+        if (message == null) {
+            return NO_TIMESTAMP;
+        }
+        int at = message.lastIndexOf(TIMESTAMP_MARKER);
+        if (at < 0) {
+            return NO_TIMESTAMP;
+        }
+        long value = 0;
+        int i = at + TIMESTAMP_MARKER.length();
+        int start = i;
+        // nanoTime can be negative
+        boolean isNegative = i < message.length() && message.charAt(i) == '-';
+        if (isNegative) {
+            i++;
+            start++;
+        }
+        for (; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 + (c - '0');
+        }
+        if (i == start) {
+            return NO_TIMESTAMP;
+        }
+        return isNegative ? -value : value;
+    }
+
+    public void close() {
+        isClosing = true;
+        try {
+            if (socket != null) {
+                socket.close();
+            }
+        } catch (IOException e) {
+            // closing anyway
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package Project.LoadGen;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+import Project.Common.LatencyHistogram;
+import Project.Common.LoggerUtil;
+import Project.Common.PayloadType;
+
+/**
+ * Headless bot swarm for end-to-end throughput and latency testing against a
+ * running Server.
+ * <p>
+ * Connects the bots, spreads them over rooms (the first bot of each room
+ * creates it), then sends messages, rolls, flips and private messages at a
+ * target rate and reports throughput and delivery latency (send to receipt
+ * by each recipient, from the timestamp in the message text).
+ * </p>
+ * Run with: java Project.LoadGen.LoadGen [host] [port] and tune with
+ * <ul>
+ * <li>-Dloadgen.clients=1000 bots</li>
+ * <li>-Dloadgen.rooms=10 rooms they're spread over</li>
+ * <li>-Dloadgen.rate=1000 actions per second across all bots</li>
+ * <li>-Dloadgen.duration=30 seconds of traffic</li>
+ * <li>-Dloadgen.mix=85,5,5,5 weights of message, roll, flip, private
+ * message</li>
+ * <li>-Dloadgen.wire=binary (or legacy for Java serialization)</li>
+ * </ul>
+ */
+public class LoadGen {
+    private static final long TICK_MS = 10;
+
+    /**
+     * Counters shared by every bot
+     */
+    public static class Stats {
+        private final LongAdder[] sent = new LongAdder[PayloadType.values().length];
+        private final LongAdder delivered = new LongAdder();
+        private final LongAdder other = new LongAdder();
+        private final LongAdder sendFailures = new LongAdder();
+        private final LongAdder connectionsLost = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        Stats() {
+            for (int i = 0; i < sent.length; i++) {
+                sent[i] = new LongAdder();
+            }
+        }
+
+        void onSent(PayloadType type) {
+            sent[type.ordinal()].increment();
+        }
+
+        /**
+         * @param sentAt embedded send time or Bot.NO_TIMESTAMP
+         */
+        void onDelivered(long sentAt) {
+            delivered.increment();
+            if (sentAt != Bot.NO_TIMESTAMP) {
+                latency.record(System.nanoTime() - sentAt);
+            }
+        }
+
+        void onOther() {
+            other.increment();
+        }
+
+        void onSendFailure() {
+            sendFailures.increment();
+        }
+
+        void onConnectionLost() {
+            connectionsLost.increment();
+        }
+
+        long getSentTotal() {
+            long total = 0;
+            for (LongAdder count : sent) {
+                total += count.sum();
+            }
+            return total;
+        }
+
+        long getDelivered() {
+            return delivered.sum();
+        }
+
+        String report(double seconds) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.ROOT, "sent %s actions (%.0f/s):", getSentTotal(),
+                    getSentTotal() / seconds));
+            for (PayloadType type : PayloadType.values()) {
+                long count = sent[type.ordinal()].sum();
+                if (count > 0) {
+                    sb.append(' ').append(type).append('=').append(count);
+                }
+            }
+            sb.append(String.format(Locale.ROOT, "%ndelivered %s messages (%.0f/s), %s other payloads%n",
+                    getDelivered(), getDelivered() / seconds, other.sum()));
+            sb.append(String.format(Locale.ROOT,
+                    "latency p50=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms (%s samples)%n",
+                    latency.getValueAtPercentile(50) / 1e6, latency.getValueAtPercentile(99) / 1e6,
+                    latency.getValueAtPercentile(99.9) / 1e6, latency.getMaxNanos() / 1e6, latency.getCount()));
+            sb.append(String.format("send failures=%s connections lost=%s", sendFailures.sum(),
+                    connectionsLost.sum()));
+            return sb.toString();
+        }
+    }
+
+    private final String host;
+    private final int port;
+    private final int clientCount = Integer.getInteger("loadgen.clients", 1000);
+    private final int roomCount = Math.max(1, Integer.getInteger("loadgen.rooms", 10));
+    private final int rate = Integer.getInteger("loadgen.rate", 1000);
+    private final int durationSeconds = Integer.getInteger("loadgen.duration", 30);
+    private final boolean isBinary = !"legacy".equalsIgnoreCase(System.getProperty("loadgen.wire", "binary"));
+    private final int[] mix = parseMix(System.getProperty("loadgen.mix", "85,5,5,5"));
+    private final Stats stats = new Stats();
+    private final List<Bot> bots = new ArrayList<>();
+    private final List<List<Bot>> roomMembers = new ArrayList<>();
+    // sends block on the socket, each one gets its own virtual thread
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+
+    public LoadGen(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * @return cumulative weights for message, roll, flip and private message
+     */
+    private static int[] parseMix(String value) {
+        int[] weights = { 85, 5, 5, 5 };
+        String[] parts = value.split(",");
+        for (int i = 0; i < weights.length && i < parts.length; i++) {
+            try {
+                weights[i] = Math.max(0, Integer.parseInt(parts[i].trim()));
+            } catch (NumberFormatException e) {
+                // keep the default weight
+            }
+        }
+        for (int i = 1; i < weights.length; i++) {
+            weights[i] += weights[i - 1];
+        }
+        return weights;
+    }
+
+    private void connectAll() throws InterruptedException {
+        System.out.println(String.format("Connecting %s bots to %s:%s (%s)", clientCount, host, port,
+                isBinary ? "binary" : "legacy"));
+        for (int i = 0; i < clientCount; i++) {
+            Bot bot = new Bot(i, stats);
+            try {
+                bot.connect(host, port, isBinary);
+                bots.add(bot);
+            } catch (IOException e) {
+                stats.onConnectionLost();
+                System.out.println("bot" + i + " could not connect: " + e.getMessage());
+            }
+        }
+        int ready = 0;
+        for (Bot bot : bots) {
+            if (bot.awaitReady(10, TimeUnit.SECONDS)) {
+                ready++;
+            }
+        }
+        System.out.println(String.format("%s of %s bots connected", ready, clientCount));
+    }
+
+    /**
+     * The first bot of each room creates it, the rest join once it exists
+     */
+    private void spreadOverRooms() throws InterruptedException {
+        for (int r = 0; r < roomCount; r++) {
+            roomMembers.add(new ArrayList<>());
+        }
+        for (int i = 0; i < bots.size(); i++) {
+            roomMembers.get(i % roomCount).add(bots.get(i));
+        }
+        for (int r = 0; r < roomCount && r < bots.size(); r++) {
+            sendSafely(bots.get(r), bot -> bot.createRoom("loadgen-" + bot.getName().substring(3)));
+        }
+        Thread.sleep(500);
+        for (int r = 0; r < roomCount; r++) {
+            List<Bot> members = roomMembers.get(r);
+            if (members.isEmpty()) {
+                continue;
+            }
+            String room = members.get(0).getRoom();
+            for (int m = 1; m < members.size(); m++) {
+                sendSafely(members.get(m), bot -> bot.joinRoom(room));
+            }
+        }
+        Thread.sleep(Math.max(1000, clientCount)); // joins fan out a presence update to every member
+        System.out.println(String.format("Spread over %s rooms", roomCount));
+    }
+
+    @FunctionalInterface
+    private interface BotAction {
+        void run(Bot bot) throws IOException;
+    }
+
+    private void sendSafely(Bot bot, BotAction action) {
+        try {
+            action.run(bot);
+        } catch (IOException e) {
+            stats.onSendFailure();
+        }
+    }
+
+    /**
+     * Sends one randomly chosen action from a random bot
+     */
+    private void sendOne() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int r = random.nextInt(roomMembers.size());
+        List<Bot> members = roomMembers.get(r);
+        if (members.isEmpty()) {
+            return;
+        }
+        Bot bot = members.get(random.nextInt(members.size()));
+        int pick = random.nextInt(Math.max(1, mix[3]));
+        BotAction action;
+        if (pick < mix[0]) {
+            action = Bot::sendMessage;
+        } else if (pick < mix[1]) {
+            action = Bot::sendRoll;
+        } else if (pick < mix[2]) {
+            action = Bot::sendFlip;
+        } else if (members.size() > 1) {
+            Bot target = members.get(random.nextInt(members.size()));
+            if (target == bot) {
+                target = members.get((members.indexOf(bot) + 1) % members.size());
+            }
+            long targetId = target.getClientId();
+            action = sender -> sender.sendPrivateMessage(targetId);
+        } else {
+            action = Bot::sendMessage;
+        }
+        senders.execute(() -> sendSafely(bot, action));
+    }
+
+    private void runTraffic() throws InterruptedException {
+        System.out.println(String.format("Sending %s actions/s for %ss", rate, durationSeconds));
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+        long nextReport = start + TimeUnit.SECONDS.toNanos(5);
+        long issued = 0;
+        long lastDelivered = 0;
+        long lastReportAt = start;
+        while (true) {
+            long now = System.nanoTime();
+            if (now >= end) {
+                break;
+            }
+            // catch up to where the target rate says we should be
+            long due = (long) ((now - start) / 1e9 * rate);
+            for (; issued < due; issued++) {
+                sendOne();
+            }
+            if (now >= nextReport) {
+                long delivered = stats.getDelivered();
+                System.out.println(String.format(Locale.ROOT, "  %.0fs: sent %s, delivering %.0f/s",
+                        (now - start) / 1e9, stats.getSentTotal(),
+                        (delivered - lastDelivered) / ((now - lastReportAt) / 1e9)));
+                lastDelivered = delivered;
+                lastReportAt = now;
+                nextReport += TimeUnit.SECONDS.toNanos(5);
+            }
+            Thread.sleep(TICK_MS);
+        }
+        Thread.sleep(2000); // let deliveries drain
+        System.out.println(stats.report(durationSeconds));
+    }
+
+    private void close() {
+        senders.shutdownNow();
+        for (Bot bot : bots) {
+            bot.close();
+        }
+    }
+
+    public void run() throws InterruptedException {
+        try {
+            connectAll();
+            spreadOverRooms();
+            runTraffic();
+        } finally {
+            close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoggerUtil.LoggerConfig config = new LoggerUtil.LoggerConfig();
+        config.setFileSizeLimit(2048 * 1024); // 2MB
+        config.setFileCount(1);
+        config.setLogLocation("loadgen.log");
+        config.setFileLogLevel(Level.WARNING);
+        config.setConsoleLogLevel(Level.WARNING);
+        config.setAsync(true);
+        LoggerUtil.INSTANCE.setConfig(config);
+
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = 3000;
+        try {
+            port = Integer.parseInt(args[1]);
+        } catch (Exception e) {
+            // keep the default port, same as Server
+        }
+        new LoadGen(host, port).run();
+    }
+}
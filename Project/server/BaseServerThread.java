@@ -1,21 +1,27 @@
 package Project.Server;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
+import java.util.function.Supplier;
+import java.util.logging.Level;
 
+import Project.Common.FrameCodec;
 import Project.Common.LoggerUtil;
 import Project.Common.Payload;
 
 /**
- * Base class the handles the underlying connection between Client and Server-side
+ * Base class the handles the underlying connection between Client and Server-side.
+ * <p>
+ * It's a Runnable rather than a Thread subclass so the blocking read loop can run
+ * on either a platform or a virtual thread, and NIO connections need no thread
+ * at all.
+ * </p>
  */
-public abstract class BaseServerThread extends Thread {
+public abstract class BaseServerThread implements Runnable {
     
-    protected boolean isRunning = false; // control variable to stop this thread
-    protected ObjectOutputStream out; // exposed here for send()
-    protected Socket client; // communication directly to "my" client
+    protected volatile boolean isRunning = false; // control variable to stop the read loop
+    protected ClientConnection connection; // communication directly to "my" client (blocking or NIO)
+    private volatile Thread readerThread; // thread running run(), null for NIO connections
+    protected volatile byte wireVersion = FrameCodec.LEGACY_VERSION; // agreed during CLIENT_CONNECT
     
     /**
      * A wrapper method so we don't need to keep typing out the long/complex sysout
@@ -25,6 +31,18 @@ public abstract class BaseServerThread extends Thread {
      */
     protected abstract void info(String message);
 
+    /**
+     * Same as {@link #info(String)} but only builds the message if INFO is
+     * enabled, for logs on the per-payload path
+     * 
+     * @param message
+     */
+    protected void info(Supplier<String> message) {
+        if (LoggerUtil.INSTANCE.isLoggable(Level.INFO)) {
+            info(message.get());
+        }
+    }
+
     /**
      * Triggered when object is fully initialized
      */
@@ -36,6 +54,27 @@ public abstract class BaseServerThread extends Thread {
      */
     protected abstract void processPayload(Payload payload);
 
+    /**
+     * @return the wire version agreed with this client (legacy until CLIENT_CONNECT)
+     */
+    protected byte getWireVersion() {
+        return wireVersion;
+    }
+
+    /**
+     * @return frames waiting in this client's outbound queue
+     */
+    protected int getQueueDepth() {
+        return connection == null ? 0 : connection.getQueueDepth();
+    }
+
+    /**
+     * @return this client's outbound queue, null before a connection is set
+     */
+    protected OutboundQueue getOutboundQueue() {
+        return connection == null ? null : connection.getQueue();
+    }
+
     /**
      * Sends the payload over the socket
      * 
@@ -46,57 +85,132 @@ public abstract class BaseServerThread extends Thread {
         if(!isRunning){
             return true;
         }
+        byte[] frame;
         try {
-            out.writeObject(payload);
-            out.flush();
+            frame = FrameCodec.encode(payload, wireVersion);
+        } catch (IOException e) {
+            LoggerUtil.INSTANCE.severe("Error encoding payload: " + payload, e);
+            return false;
+        }
+        return write(frame, payload);
+    }
+
+    /**
+     * Sends a broadcast frame shared with other recipients; the payload is only
+     * encoded the first time a recipient with this wire version needs it
+     * 
+     * @param frame
+     * @return true if no errors were encountered
+     */
+    protected boolean sendFrame(BroadcastFrame frame) {
+        if (!isRunning) {
             return true;
+        }
+        byte[] bytes;
+        try {
+            bytes = frame.encoded(wireVersion);
         } catch (IOException e) {
+            LoggerUtil.INSTANCE.severe("Error encoding payload: " + frame.getPayload(), e);
+            return false;
+        }
+        return write(bytes, frame.getPayload());
+    }
+
+    /**
+     * Hands the frame to the connection's outbound queue; only chat messages
+     * are eligible to be dropped by the overflow policy. The connection counts
+     * it as sent once it's written (or as dropped).
+     */
+    private boolean write(byte[] frame, Payload payload) {
+        if (!connection.write(frame, payload.getPayloadType())) {
             info("Error sending message to client (most likely disconnected)");
-            // comment this out to inspect the stack trace
-            // e.printStackTrace();
             cleanup();
             return false;
         }
+        return true;
     }
     
+    /**
+     * Starts the blocking read loop on a thread from the given builder
+     * 
+     * @param builder e.g. Thread.ofPlatform() or Thread.ofVirtual()
+     */
+    protected void start(Thread.Builder builder) {
+        readerThread = builder.start(this);
+    }
+
     /**
      * One of the two ways to get this to exit the listen loop
      */
     protected void disconnect() {
         info("Thread being disconnected by server");
         isRunning = false;
-        this.interrupt(); // breaks out of blocking read in the run() method
+        Thread reader = readerThread;
+        if (reader != null) {
+            reader.interrupt(); // breaks out of blocking read in the run() method
+        }
         cleanup(); // good practice to ensure data is written out immediately
     }
 
+    /**
+     * Passes a fully decoded payload to the handler; shared by the blocking read
+     * loop and the NIO event loops
+     * 
+     * @param payload
+     */
+    protected void onPayloadReceived(Payload payload) {
+        info(() -> "Received from my client: " + payload);
+        processPayload(payload);
+    }
+
+    /**
+     * Used by the NIO engine in place of run() once the channel is registered
+     */
+    protected void onConnectionOpened() {
+        info("Connection registered with event loop");
+        isRunning = true;
+    }
+
+    /**
+     * Used by the NIO engine when the channel hits EOF or fails
+     */
+    protected void onConnectionClosed() {
+        if (isRunning) {
+            isRunning = false;
+            info("My Client disconnected");
+            cleanup();
+        }
+    }
+
+    /**
+     * Blocking read loop, only valid for a SocketConnection (NIO connections are
+     * driven by their event loop instead)
+     */
     @Override
     public void run() {
         info("Thread starting");
-        try (ObjectOutputStream out = new ObjectOutputStream(client.getOutputStream());
-                ObjectInputStream in = new ObjectInputStream(client.getInputStream());) {
-            this.out = out;
+        if (!(connection instanceof SocketConnection socketConnection)) {
+            throw new IllegalStateException("run() requires a blocking SocketConnection");
+        }
+        try {
             isRunning = true;
             //onInitialized();
             Payload fromClient;
             /**
              * isRunning is a flag to let us manage the loop exit condition
-             * fromClient (in.readObject()) is a blocking method that waits until data is received
+             * fromClient (socketConnection.read()) is a blocking method that waits until data is received
              *  - null would likely mean a disconnect so we use a "set and check" logic to alternatively exit the loop
              */
             while (isRunning) {
                 try{
-                    fromClient = (Payload) in.readObject(); // blocking method
+                    fromClient = socketConnection.read(); // blocking method
                     if (fromClient != null) {
-                        info("Received from my client: " + fromClient);
-                        processPayload(fromClient);
+                        onPayloadReceived(fromClient);
                     }
                     else{
                         throw new IOException("Connection interrupted"); // Specific exception for a clean break
                     }
                 }
-                catch (ClassCastException | ClassNotFoundException cce) {
-                    LoggerUtil.INSTANCE.severe("Error reading object as specified type: ", cce);
-                }
                 catch (IOException e) {
                     if (Thread.currentThread().isInterrupted()) {
                         info("Thread interrupted during read (likely from the disconnect() method)");
@@ -119,12 +233,10 @@ public abstract class BaseServerThread extends Thread {
 
     protected void cleanup() {
         info("ServerThread cleanup() start");
-        try {
-            client.close();
-        } catch (IOException e) {
-            info("Client already closed");
+        if (connection != null) {
+            connection.close();
         }
-        
+
         info("ServerThread cleanup() end");
     }
 }
@@ -0,0 +1,68 @@
+package Project.Server;
+
+import java.io.IOException;
+
+import Project.Common.BinaryCodec;
+import Project.Common.FrameCodec;
+import Project.Common.Payload;
+
+/**
+ * Encode-once cache of a Payload shared by every recipient of a Room
+ * broadcast.
+ * <p>
+ * The payload is encoded at most once per wire version (legacy or binary)
+ * no matter how many members receive it. Connections queue the returned
+ * byte[] itself, never the frame, so the frame is only needed for the
+ * broadcast that created it and is simply garbage afterwards.
+ * </p>
+ */
+public final class BroadcastFrame {
+    private final Payload payload;
+    // benign races: encoding is deterministic so two threads may both fill a slot
+    private volatile byte[] legacyFrame;
+    private volatile byte[] binaryFrame;
+    private volatile long encodeNanos; // total time spent in FrameCodec.encode
+
+    public BroadcastFrame(Payload payload) {
+        this.payload = payload;
+    }
+
+    public Payload getPayload() {
+        return payload;
+    }
+
+    /**
+     * Gets (encoding on first use) the frame bytes for a connection's wire
+     * version. Callers must not modify the returned array.
+     *
+     * @param wireVersion
+     * @return the encoded frame
+     * @throws IOException if encoding fails
+     */
+    public byte[] encoded(byte wireVersion) throws IOException {
+        if (wireVersion == BinaryCodec.VERSION) {
+            byte[] frame = binaryFrame;
+            if (frame == null) {
+                long start = System.nanoTime();
+                frame = binaryFrame = FrameCodec.encode(payload, wireVersion);
+                encodeNanos += System.nanoTime() - start;
+            }
+            return frame;
+        }
+        byte[] frame = legacyFrame;
+        if (frame == null) {
+            long start = System.nanoTime();
+            frame = legacyFrame = FrameCodec.encode(payload);
+            encodeNanos += System.nanoTime() - start;
+        }
+        return frame;
+    }
+
+    /**
+     * @return nanoseconds spent encoding so far (approximate if two threads
+     *         encoded at once)
+     */
+    public long getEncodeNanos() {
+        return encodeNanos;
+    }
+}
@@ -0,0 +1,44 @@
+package Project.Server;
+
+import Project.Common.PayloadType;
+
+/**
+ * Transport used by a ServerThread to push encoded frames to its client.
+ * Implementations hide whether the underlying socket is blocking or
+ * non-blocking so Room and ServerThread send logic stays the same.
+ */
+public interface ClientConnection {
+
+    /**
+     * Queues a complete frame for the connection's writer; never blocks on
+     * socket I/O
+     * 
+     * @param frame length-prefixed bytes from FrameCodec
+     * @param type  payload type, MESSAGE frames are chat that overflow policies
+     *              may drop
+     * @return false if the connection is broken or was closed as a slow
+     *         consumer
+     */
+    boolean write(byte[] frame, PayloadType type);
+
+    /**
+     * @return number of frames waiting to be written
+     */
+    int getQueueDepth();
+
+    /**
+     * @return the outbound queue, e.g. to change its limits at runtime
+     */
+    OutboundQueue getQueue();
+
+    /**
+     * @return true until the connection is closed from either side
+     */
+    boolean isOpen();
+
+    /**
+     * Stops accepting frames and closes the underlying socket once what's
+     * queued has been written (best effort); safe to call more than once
+     */
+    void close();
+}
@@ -0,0 +1,37 @@
+package Project.Server;
+
+/**
+ * Selects how the Server services client connections
+ */
+public enum ConnectionMode {
+    /**
+     * One platform thread per connection blocking on reads (original behavior)
+     */
+    BLOCKING,
+    /**
+     * One virtual thread per connection blocking on reads; cheap enough for tens
+     * of thousands of mostly idle clients
+     */
+    VIRTUAL,
+    /**
+     * A small pool of Selector based event loops, each owning many connections
+     */
+    NIO;
+
+    /**
+     * Lenient parse used for command line arguments
+     * 
+     * @param value mode name (case insensitive), may be null
+     * @return the matching mode or BLOCKING if it can't be determined
+     */
+    public static ConnectionMode fromString(String value) {
+        if (value != null) {
+            for (ConnectionMode mode : values()) {
+                if (mode.name().equalsIgnoreCase(value.trim())) {
+                    return mode;
+                }
+            }
+        }
+        return BLOCKING;
+    }
+}
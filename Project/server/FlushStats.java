@@ -0,0 +1,120 @@
+package Project.Server;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Server-wide counters for the coalescing writers: how many frames go out per
+ * socket write (micro-batch size) and how long a frame waits between being
+ * queued and being handed to the socket (flush latency).
+ * <p>
+ * Recording is lock free (striped adders) since every connection's writer
+ * reports here.
+ * </p>
+ */
+public enum FlushStats {
+    INSTANCE;
+
+    // batch size buckets: 1, 2-3, 4-7, 8-15, 16-31, 32-63, 64+
+    private static final int BUCKETS = 7;
+
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+    private final LongAccumulator maxBatchFrames = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder[] batchSizes = new LongAdder[BUCKETS];
+
+    private FlushStats() {
+        for (int i = 0; i < BUCKETS; i++) {
+            batchSizes[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records one socket write
+     *
+     * @param frameCount    frames coalesced into the write
+     * @param byteCount     bytes written
+     * @param oldestQueued  System.nanoTime() the oldest frame in the batch was
+     *                      queued at
+     */
+    public void record(int frameCount, long byteCount, long oldestQueued) {
+        long latency = Math.max(0, System.nanoTime() - oldestQueued);
+        flushes.increment();
+        frames.add(frameCount);
+        bytes.add(byteCount);
+        latencyNanos.add(latency);
+        maxBatchFrames.accumulate(frameCount);
+        maxLatencyNanos.accumulate(latency);
+        int bucket = 31 - Integer.numberOfLeadingZeros(Math.max(1, frameCount));
+        batchSizes[Math.min(bucket, BUCKETS - 1)].increment();
+    }
+
+    public long getFlushCount() {
+        return flushes.sum();
+    }
+
+    public long getFrameCount() {
+        return frames.sum();
+    }
+
+    public long getByteCount() {
+        return bytes.sum();
+    }
+
+    /**
+     * @return average frames per socket write
+     */
+    public double getAverageBatchSize() {
+        long count = flushes.sum();
+        return count == 0 ? 0 : (double) frames.sum() / count;
+    }
+
+    public long getMaxBatchSize() {
+        return maxBatchFrames.get();
+    }
+
+    /**
+     * @return average queue-to-socket time in microseconds
+     */
+    public double getAverageFlushLatencyMicros() {
+        long count = flushes.sum();
+        return count == 0 ? 0 : latencyNanos.sum() / 1000.0 / count;
+    }
+
+    public double getMaxFlushLatencyMicros() {
+        return maxLatencyNanos.get() / 1000.0;
+    }
+
+    /**
+     * @return socket writes per batch size bucket (1, 2-3, 4-7, ... 64+)
+     */
+    public long[] getBatchSizeHistogram() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = batchSizes[i].sum();
+        }
+        return counts;
+    }
+
+    public void reset() {
+        flushes.reset();
+        frames.reset();
+        bytes.reset();
+        latencyNanos.reset();
+        maxBatchFrames.reset();
+        maxLatencyNanos.reset();
+        for (LongAdder bucket : batchSizes) {
+            bucket.reset();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("flushes=%s frames=%s bytes=%s avgBatch=%.2f maxBatch=%s avgLatency=%.1fus maxLatency=%.1fus",
+                getFlushCount(), getFrameCount(), getByteCount(), getAverageBatchSize(), getMaxBatchSize(),
+                getAverageFlushLatencyMicros(), getMaxFlushLatencyMicros());
+    }
+}
@@ -0,0 +1,113 @@
+package Project.Server;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Who muted whom among the members of one Room, keyed by client id.
+ * <p>
+ * Mute lists are stored by name ({@link MuteListStore}); the Room copies the
+ * pairs that involve its members in here as they join, mute or leave. A
+ * broadcast then looks the sender up once and gets the ids to skip as a
+ * sorted long[], instead of checking every recipient's list for the sender's
+ * name. Changes copy the small arrays they touch, which is fine since mutes,
+ * joins and leaves are rare next to messages.
+ * </p>
+ * Not thread safe, the Room only uses it on its mailbox.
+ */
+final class MuteIndex {
+    static final long[] NONE = new long[0];
+
+    private final HashMap<Long, long[]> mutedBy = new HashMap<>(); // sender -> members that muted them
+    private final HashMap<Long, long[]> mutes = new HashMap<>(); // member -> senders they muted
+
+    /**
+     * @param senderId
+     * @return sorted ids of the members that muted senderId, NONE if nobody
+     *         did; don't modify it
+     */
+    long[] getMutedBy(long senderId) {
+        long[] ids = mutedBy.get(senderId);
+        return ids == null ? NONE : ids;
+    }
+
+    /**
+     * @param ids from {@link #getMutedBy(long)}
+     * @param id
+     * @return true if id is in ids
+     */
+    static boolean contains(long[] ids, long id) {
+        return ids.length != 0 && Arrays.binarySearch(ids, id) >= 0;
+    }
+
+    /**
+     * Records that muterId muted senderId
+     */
+    void add(long senderId, long muterId) {
+        insert(mutedBy, senderId, muterId);
+        insert(mutes, muterId, senderId);
+    }
+
+    /**
+     * Records that muterId unmuted senderId
+     */
+    void remove(long senderId, long muterId) {
+        delete(mutedBy, senderId, muterId);
+        delete(mutes, muterId, senderId);
+    }
+
+    /**
+     * Forgets every pair the client is part of, when they leave the room
+     *
+     * @param clientId
+     */
+    void removeClient(long clientId) {
+        long[] muters = mutedBy.remove(clientId);
+        if (muters != null) {
+            for (long muterId : muters) {
+                delete(mutes, muterId, clientId);
+            }
+        }
+        long[] senders = mutes.remove(clientId);
+        if (senders != null) {
+            for (long senderId : senders) {
+                delete(mutedBy, senderId, clientId);
+            }
+        }
+    }
+
+    void clear() {
+        mutedBy.clear();
+        mutes.clear();
+    }
+
+    private static void insert(HashMap<Long, long[]> index, long key, long id) {
+        long[] ids = index.getOrDefault(key, NONE);
+        int at = Arrays.binarySearch(ids, id);
+        if (at >= 0) {
+            return;
+        }
+        at = -at - 1;
+        long[] grown = new long[ids.length + 1];
+        System.arraycopy(ids, 0, grown, 0, at);
+        grown[at] = id;
+        System.arraycopy(ids, at, grown, at + 1, ids.length - at);
+        index.put(key, grown);
+    }
+
+    private static void delete(HashMap<Long, long[]> index, long key, long id) {
+        long[] ids = index.get(key);
+        int at = ids == null ? -1 : Arrays.binarySearch(ids, id);
+        if (at < 0) {
+            return;
+        }
+        if (ids.length == 1) {
+            index.remove(key);
+            return;
+        }
+        long[] shrunk = new long[ids.length - 1];
+        System.arraycopy(ids, 0, shrunk, 0, at);
+        System.arraycopy(ids, at + 1, shrunk, at, ids.length - at - 1);
+        index.put(key, shrunk);
+    }
+}
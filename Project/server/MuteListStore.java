@@ -0,0 +1,341 @@
+package Project.Server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import Project.Common.LoggerUtil;
+
+/**
+ * Every user's mute list, kept in memory and persisted write-behind.
+ * <p>
+ * The map here is authoritative: mute and unmute change it right away and
+ * queue a record, and a background writer appends everything queued to one
+ * journal (mute_lists/mutes.journal, or under -Dchat.mutes.dir) every
+ * -Dchat.mutes.flushMs (200ms by default). Nothing on a socket or room
+ * thread touches the disk, and a crash loses at most the last flush
+ * interval. Once the journal holds a few times
+ * more records than there are live mutes it's compacted: rewritten as one
+ * record per live mute and swapped in.
+ * </p>
+ * <p>
+ * The journal is replayed off-thread by {@link #preload()} when the server
+ * starts. Old per-user mute_lists/&lt;name&gt;.txt files are imported into
+ * it once and renamed to .txt.imported.
+ * </p>
+ */
+public enum MuteListStore {
+    INSTANCE;
+
+    private static final String MUTE_LIST_DIRECTORY = "mute_lists";
+    private static final String LEGACY_SUFFIX = ".txt";
+    private static final long FLUSH_MS = Long.getLong("chat.mutes.flushMs", 200);
+    // compact once the journal is this many times the live mutes (and big enough to bother)
+    private static final int COMPACT_RATIO = 4;
+    private static final int COMPACT_MIN_RECORDS = 10_000;
+    private static final byte UNMUTE = 0;
+    private static final byte MUTE = 1;
+
+    /**
+     * One queued journal record
+     */
+    private static final class Change {
+        final byte op;
+        final String muter;
+        final String muted;
+
+        Change(byte op, String muter, String muted) {
+            this.op = op;
+            this.muter = muter;
+            this.muted = muted;
+        }
+    }
+
+    // -Dchat.mutes.dir, read once when the store is first used
+    private final Path directory = Paths.get(System.getProperty("chat.mutes.dir", MUTE_LIST_DIRECTORY));
+    private final Path journal = directory.resolve("mutes.journal");
+    // muter -> who they muted; sets are concurrent so broadcasts read them without a lock
+    private final ConcurrentHashMap<String, Set<String>> muteLists = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Change> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger liveMutes = new AtomicInteger();
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "mute-store-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private CompletableFuture<Void> loaded;
+    // only touched on the writer thread
+    private DataOutputStream journalOut;
+    private int journalRecords = 0;
+    private boolean isCompactionNeeded = false; // a failed write left records out of the journal
+    private boolean isClosed = false;
+
+    /**
+     * Starts replaying the journal on the writer thread (only the first call
+     * does anything)
+     *
+     * @return completes once every mute list is in memory
+     */
+    public synchronized CompletableFuture<Void> preload() {
+        if (loaded == null) {
+            loaded = CompletableFuture.runAsync(this::load, writer);
+            writer.scheduleWithFixedDelay(this::flush, FLUSH_MS, FLUSH_MS, TimeUnit.MILLISECONDS);
+        }
+        return loaded;
+    }
+
+    /**
+     * The live set of names clientName has muted. It's the store's own set,
+     * kept current by {@link #mute(String, String)} and
+     * {@link #unmute(String, String)}, so callers hold on to it for lookups
+     * and never modify it. Never waits: until {@link #preload()} completes
+     * the set may still be filling.
+     *
+     * @param clientName
+     * @return never null
+     */
+    public Set<String> getMuteList(String clientName) {
+        return muteLists.computeIfAbsent(clientName, name -> ConcurrentHashMap.newKeySet());
+    }
+
+    /**
+     * Only for clients that finished initializing, which happens after
+     * {@link #preload()} completes, so the journal replay never races it
+     *
+     * @param muter
+     * @param muted
+     * @return false if muter already had muted muted
+     */
+    public boolean mute(String muter, String muted) {
+        Set<String> muteList = getMuteList(muter);
+        // under the set's lock so the journal sees a muter's changes in the order they were made
+        synchronized (muteList) {
+            if (!muteList.add(muted)) {
+                return false;
+            }
+            pending.add(new Change(MUTE, muter, muted));
+        }
+        liveMutes.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Same as {@link #mute(String, String)}, only after {@link #preload()}
+     *
+     * @param muter
+     * @param muted
+     * @return false if muter hadn't muted muted
+     */
+    public boolean unmute(String muter, String muted) {
+        Set<String> muteList = getMuteList(muter);
+        synchronized (muteList) {
+            if (!muteList.remove(muted)) {
+                return false;
+            }
+            pending.add(new Change(UNMUTE, muter, muted));
+        }
+        liveMutes.decrementAndGet();
+        return true;
+    }
+
+    /**
+     * Writes what's still queued and closes the journal; safe to call more
+     * than once
+     */
+    public synchronized void close() {
+        if (writer.isShutdown()) {
+            return;
+        }
+        try {
+            writer.submit(() -> {
+                flush();
+                closeJournal();
+                isClosed = true;
+            }).get(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            LoggerUtil.INSTANCE.severe("Error flushing mute lists", e);
+        }
+        writer.shutdown();
+    }
+
+    // writer thread only below here
+
+    private void load() {
+        boolean isTruncated = false;
+        if (Files.exists(journal)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journal)))) {
+                while (true) {
+                    int op = in.read();
+                    if (op < 0) {
+                        break;
+                    }
+                    Change change;
+                    try {
+                        change = new Change((byte) op, in.readUTF(), in.readUTF());
+                    } catch (EOFException e) {
+                        // the last flush was cut off by a crash, that record never finished
+                        isTruncated = true;
+                        break;
+                    }
+                    Set<String> muteList = muteLists.computeIfAbsent(change.muter,
+                            name -> ConcurrentHashMap.newKeySet());
+                    if (change.op == MUTE) {
+                        muteList.add(change.muted);
+                    } else {
+                        muteList.remove(change.muted);
+                    }
+                    journalRecords++;
+                }
+            } catch (IOException e) {
+                LoggerUtil.INSTANCE.severe("Error reading mute journal, continuing with what was read", e);
+                isTruncated = true;
+            }
+        }
+        int live = 0;
+        for (Set<String> muteList : muteLists.values()) {
+            live += muteList.size();
+        }
+        liveMutes.set(live);
+        importLegacyLists();
+        LoggerUtil.INSTANCE.info("Loaded mute lists for %s users (%s mutes, %s journal records)", muteLists.size(),
+                live, journalRecords);
+        if (isTruncated) {
+            // appending after a partial record would corrupt everything after it
+            compact();
+        }
+    }
+
+    /**
+     * Folds mute_lists/&lt;name&gt;.txt files from before the journal into it
+     */
+    private void importLegacyLists() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + LEGACY_SUFFIX)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                String muter = fileName.substring(0, fileName.length() - LEGACY_SUFFIX.length());
+                try {
+                    Set<String> muteList = muteLists.computeIfAbsent(muter, name -> ConcurrentHashMap.newKeySet());
+                    for (String muted : Files.readAllLines(file)) {
+                        if (!muted.isEmpty() && muteList.add(muted)) {
+                            pending.add(new Change(MUTE, muter, muted));
+                            liveMutes.incrementAndGet();
+                        }
+                    }
+                    // renamed only after the import so a failed one is retried next start
+                    Files.move(file, file.resolveSibling(fileName + ".imported"), StandardCopyOption.REPLACE_EXISTING);
+                    LoggerUtil.INSTANCE.info("Imported mute list for " + muter);
+                } catch (IOException e) {
+                    LoggerUtil.INSTANCE.warning("Could not import mute list " + file, e);
+                }
+            }
+        } catch (IOException e) {
+            LoggerUtil.INSTANCE.warning("Could not look for old mute lists", e);
+        }
+        flush();
+    }
+
+    /**
+     * Appends everything queued with a single write and flush
+     */
+    private void flush() {
+        if (isClosed || pending.isEmpty()) {
+            return;
+        }
+        try {
+            if (journalOut == null) {
+                Files.createDirectories(directory);
+                journalOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(journal,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+            }
+            Change change;
+            while ((change = pending.poll()) != null) {
+                writeChange(journalOut, change);
+                journalRecords++;
+            }
+            journalOut.flush();
+        } catch (IOException e) {
+            // memory is still right, the next compaction rewrites the journal from it
+            LoggerUtil.INSTANCE.severe("Error writing mute journal", e);
+            closeJournal();
+            isCompactionNeeded = true;
+            return;
+        }
+        if (isCompactionNeeded
+                || (journalRecords > COMPACT_MIN_RECORDS && journalRecords > COMPACT_RATIO * liveMutes.get())) {
+            compact();
+        }
+    }
+
+    private static void writeChange(DataOutputStream out, Change change) throws IOException {
+        out.writeByte(change.op);
+        out.writeUTF(change.muter);
+        out.writeUTF(change.muted);
+    }
+
+    /**
+     * Rewrites the journal as one record per live mute
+     */
+    private void compact() {
+        closeJournal();
+        Path compacted = journal.resolveSibling(journal.getFileName() + ".tmp");
+        int records = 0;
+        try {
+            Files.createDirectories(directory);
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(compacted)))) {
+                for (Map.Entry<String, Set<String>> entry : muteLists.entrySet()) {
+                    List<String> muted;
+                    synchronized (entry.getValue()) {
+                        muted = new ArrayList<>(entry.getValue());
+                    }
+                    // what's still queued gets appended after this, replaying it
+                    // on top of a snapshot that may already have it is harmless
+                    for (String name : muted) {
+                        writeChange(out, new Change(MUTE, entry.getKey(), name));
+                        records++;
+                    }
+                }
+            }
+            Files.move(compacted, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LoggerUtil.INSTANCE.info("Compacted mute journal from %s to %s records", journalRecords, records);
+            journalRecords = records;
+            isCompactionNeeded = false;
+        } catch (IOException e) {
+            LoggerUtil.INSTANCE.severe("Error compacting mute journal", e);
+        }
+    }
+
+    private void closeJournal() {
+        if (journalOut != null) {
+            try {
+                journalOut.close();
+            } catch (IOException e) {
+                LoggerUtil.INSTANCE.info("Error closing mute journal", e);
+            }
+            journalOut = null;
+        }
+    }
+}
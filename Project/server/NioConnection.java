@@ -0,0 +1,399 @@
+package Project.Server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import Project.Common.FrameCodec;
+import Project.Common.LoggerUtil;
+import Project.Common.Payload;
+import Project.Common.PayloadType;
+
+/**
+ * Non-blocking transport for a single client owned by one NioEventLoop.
+ * <p>
+ * Writes from any thread go into a bounded {@link OutboundQueue} that the loop
+ * (this connection's writer) drains with gathering writes, so everything
+ * queued since the last flush goes out in one system call; reads are
+ * accumulated until whole frames are available and then handed to the
+ * ServerThread on the loop thread.
+ * </p>
+ * <p>
+ * A client from before framing is recognized by its first 4 bytes
+ * ({@link FrameCodec#LEGACY_STREAM_MAGIC}). Java serialization can't be
+ * decoded a piece at a time, so its bytes are passed to an ObjectInputStream
+ * on a virtual thread which hands each payload back to the loop, and frames
+ * sent to it are rewritten by {@link FrameCodec#toLegacyStream(byte[])}.
+ * </p>
+ */
+public class NioConnection implements ClientConnection {
+    private static final int INITIAL_READ_BUFFER = 8 * 1024;
+    private static final int MAX_GATHER = 64;
+
+    private final SocketChannel channel;
+    private final NioEventLoop loop;
+    private final OutboundQueue queue = new OutboundQueue();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final AtomicBoolean closing = new AtomicBoolean(false);
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+    // frames partially written to the socket, loop thread only
+    private final ByteBuffer[] pending = new ByteBuffer[MAX_GATHER];
+    private final PayloadType[] pendingTypes = new PayloadType[MAX_GATHER];
+    private int pendingStart = 0;
+    private int pendingEnd = 0;
+    private long pendingQueuedAt;
+    private boolean isFirstRead = true; // loop thread only
+    private LegacyInput legacyInput; // loop thread only, set for unframed clients
+    private volatile SelectionKey key;
+    private BaseServerThread owner;
+
+    public NioConnection(SocketChannel channel, NioEventLoop loop) {
+        this.channel = channel;
+        this.loop = loop;
+    }
+
+    /**
+     * Registers the channel with the loop's selector; must be called from the
+     * loop thread
+     *
+     * @param owner the ServerThread that receives decoded payloads
+     * @throws IOException
+     */
+    protected void register(BaseServerThread owner) throws IOException {
+        this.owner = owner;
+        channel.configureBlocking(false);
+        key = channel.register(loop.getSelector(), SelectionKey.OP_READ, this);
+        loop.onRegistered();
+    }
+
+    @Override
+    public OutboundQueue getQueue() {
+        return queue;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    @Override
+    public boolean write(byte[] frame, PayloadType type) {
+        switch (queue.offer(frame, type)) {
+            case QUEUED:
+                // only the first writer after a flush needs to poke the loop
+                if (flushScheduled.compareAndSet(false, true)) {
+                    loop.execute(this::flush);
+                }
+                return true;
+            case DROPPED:
+                return true;
+            case OVERFLOW:
+                LoggerUtil.INSTANCE.warning(String.format(
+                        "Outbound queue overflow (%s frames), disconnecting slow consumer", queue.size()));
+                queue.clear();
+                loop.execute(this::closeNow);
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Writes as much queued data as the socket accepts; registers for OP_WRITE
+     * if the kernel buffer fills up. Loop thread only.
+     */
+    protected void flush() {
+        flushScheduled.set(false);
+        if (closed.get() || key == null) {
+            return;
+        }
+        try {
+            while (true) {
+                if (pendingStart == pendingEnd && !gather()) {
+                    break;
+                }
+                channel.write(pending, pendingStart, pendingEnd - pendingStart);
+                while (pendingStart < pendingEnd && !pending[pendingStart].hasRemaining()) {
+                    if (pendingTypes[pendingStart] != null) { // null for the legacy stream header
+                        ServerMetrics.INSTANCE.recordSent(pendingTypes[pendingStart], pending[pendingStart].capacity());
+                    }
+                    pending[pendingStart] = null;
+                    pendingTypes[pendingStart++] = null;
+                }
+                if (pendingStart < pendingEnd) {
+                    // socket is full, wait until the selector says it's writable again
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            LoggerUtil.INSTANCE.fine("NIO write failed, closing connection: " + e.getMessage());
+            closeNow();
+        }
+    }
+
+    /**
+     * Moves up to MAX_GATHER queued frames into the pending batch
+     *
+     * @return false if nothing was queued
+     * @throws IOException if a frame can't be sent to an unframed client
+     */
+    private boolean gather() throws IOException {
+        pendingStart = 0;
+        pendingEnd = 0;
+        long bytes = 0;
+        OutboundQueue.QueuedFrame next;
+        while (pendingEnd < MAX_GATHER && (next = queue.poll()) != null) {
+            if (pendingEnd == 0) {
+                pendingQueuedAt = next.getEnqueuedNanos();
+            }
+            byte[] frame = legacyInput != null ? FrameCodec.toLegacyStream(next.getFrame()) : next.getFrame();
+            pendingTypes[pendingEnd] = next.getType();
+            pending[pendingEnd++] = ByteBuffer.wrap(frame);
+            bytes += frame.length;
+        }
+        if (pendingEnd > 0) {
+            FlushStats.INSTANCE.record(pendingEnd, bytes, pendingQueuedAt);
+        }
+        return pendingEnd > 0;
+    }
+
+    /**
+     * Reads available bytes and dispatches every complete frame. Loop thread
+     * only.
+     */
+    protected void onReadable() {
+        try {
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                closeNow();
+                return;
+            }
+            readBuffer.flip();
+            if (isFirstRead && readBuffer.remaining() >= FrameCodec.HEADER_SIZE) {
+                isFirstRead = false;
+                if (readBuffer.getInt(readBuffer.position()) == FrameCodec.LEGACY_STREAM_MAGIC) {
+                    startLegacyStream();
+                }
+            }
+            if (legacyInput != null) {
+                legacyInput.feed(readBuffer);
+                readBuffer.clear();
+                return;
+            }
+            while (readBuffer.remaining() >= FrameCodec.HEADER_SIZE) {
+                int start = readBuffer.position();
+                int length = readBuffer.getInt(start);
+                FrameCodec.checkLength(length);
+                if (readBuffer.remaining() < FrameCodec.HEADER_SIZE + length) {
+                    ensureCapacity(FrameCodec.HEADER_SIZE + length);
+                    break;
+                }
+                Payload payload = FrameCodec.decode(readBuffer.array(),
+                        readBuffer.arrayOffset() + start + FrameCodec.HEADER_SIZE, length);
+                readBuffer.position(start + FrameCodec.HEADER_SIZE + length);
+                ServerMetrics.INSTANCE.recordReceived(payload.getPayloadType(), FrameCodec.HEADER_SIZE + length);
+                owner.onPayloadReceived(payload);
+                if (closing.get()) {
+                    return;
+                }
+            }
+            readBuffer.compact();
+        } catch (ClosedChannelException e) {
+            closeNow();
+        } catch (IOException e) {
+            LoggerUtil.INSTANCE.severe("IO exception while reading from client", e);
+            closeNow();
+        }
+    }
+
+    /**
+     * Starts reading an unframed client's object stream and answers its stream
+     * header with ours, which its ObjectInputStream waits for before it lets
+     * the client send anything. Loop thread only.
+     */
+    private void startLegacyStream() {
+        LoggerUtil.INSTANCE.info("Client sent an unframed object stream, using the legacy protocol");
+        legacyInput = new LegacyInput();
+        LegacyInput input = legacyInput;
+        Thread.ofVirtual().name("nio-legacy-reader").start(() -> readLegacy(input));
+        // nothing is pending yet, the server only answers a client's first payload
+        pending[0] = ByteBuffer.wrap(FrameCodec.legacyStreamHeader());
+        pendingStart = 0;
+        pendingEnd = 1;
+        flush();
+    }
+
+    /**
+     * Decodes an unframed client's payloads off the loop; their sizes aren't
+     * known so they're counted as 0 bytes
+     *
+     * @param input bytes fed by the loop
+     */
+    private void readLegacy(LegacyInput input) {
+        try (ObjectInputStream ois = new ObjectInputStream(input)) {
+            while (true) {
+                Payload payload = (Payload) ois.readObject();
+                ServerMetrics.INSTANCE.recordReceived(payload.getPayloadType(), 0);
+                loop.execute(() -> {
+                    if (!closing.get()) {
+                        owner.onPayloadReceived(payload);
+                    }
+                });
+            }
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            if (!closing.get()) {
+                LoggerUtil.INSTANCE.fine("Legacy stream ended: " + e.getMessage());
+            }
+        } finally {
+            loop.execute(this::closeNow);
+        }
+    }
+
+    /**
+     * Blocking InputStream over the chunks the loop read for an unframed
+     * client; ends once closed and drained
+     */
+    private static final class LegacyInput extends InputStream {
+        private static final byte[] END = new byte[0];
+        private final LinkedBlockingQueue<byte[]> chunks = new LinkedBlockingQueue<>();
+        private byte[] current = END;
+        private int position = 0;
+        private boolean isEnded = false;
+
+        /**
+         * Copies what's left in the buffer; loop thread
+         */
+        void feed(ByteBuffer buffer) {
+            if (buffer.hasRemaining()) {
+                byte[] chunk = new byte[buffer.remaining()];
+                buffer.get(chunk);
+                chunks.add(chunk);
+            }
+        }
+
+        @Override
+        public void close() {
+            chunks.add(END);
+        }
+
+        /**
+         * Waits for more bytes
+         *
+         * @return false at the end of the stream
+         */
+        private boolean next() throws IOException {
+            while (position == current.length) {
+                if (isEnded) {
+                    return false;
+                }
+                try {
+                    current = chunks.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted", e);
+                }
+                position = 0;
+                isEnded = current == END;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return next() ? current[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!next()) {
+                return -1;
+            }
+            int count = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, count);
+            position += count;
+            return count;
+        }
+    }
+
+    /**
+     * Grows the (flipped) read buffer so a frame of the given size fits
+     *
+     * @param frameSize
+     */
+    private void ensureCapacity(int frameSize) {
+        if (readBuffer.capacity() >= frameSize) {
+            return;
+        }
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(frameSize, readBuffer.capacity() * 2));
+        larger.put(readBuffer);
+        larger.flip();
+        readBuffer = larger;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closing.get();
+    }
+
+    /**
+     * Stops accepting frames, writes whatever the socket takes without
+     * blocking, then closes
+     */
+    @Override
+    public void close() {
+        if (!closing.compareAndSet(false, true)) {
+            return;
+        }
+        queue.close();
+        if (key == null) {
+            closeNow();
+            return;
+        }
+        loop.execute(() -> {
+            flush();
+            closeNow();
+        });
+    }
+
+    /**
+     * Closes the channel immediately and tells the owner
+     */
+    protected void closeNow() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        closing.set(true);
+        queue.clear();
+        Arrays.fill(pending, null);
+        Arrays.fill(pendingTypes, null);
+        if (legacyInput != null) {
+            legacyInput.close();
+        }
+        pendingStart = pendingEnd = 0;
+        if (key != null) {
+            key.cancel();
+            loop.onDeregistered();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // already closed
+        }
+        if (owner != null) {
+            owner.onConnectionClosed();
+        }
+    }
+}
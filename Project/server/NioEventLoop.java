@@ -0,0 +1,133 @@
+package Project.Server;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import Project.Common.LoggerUtil;
+
+/**
+ * Single-threaded Selector loop that owns a subset of the NIO connections.
+ * All channel I/O and key interest changes happen on this loop's thread;
+ * other threads hand work over with {@link #execute(Runnable)}.
+ */
+public class NioEventLoop implements Runnable {
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean(false);
+    private final Thread thread;
+    private volatile boolean isRunning = true;
+    private final AtomicInteger connectionCount = new AtomicInteger();
+
+    public NioEventLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    protected Selector getSelector() {
+        return selector;
+    }
+
+    /**
+     * @return number of channels currently registered with this loop
+     */
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    protected boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Queues a task to run on the loop thread, waking the selector only if it
+     * isn't already going to wake up
+     *
+     * @param task
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        if (!inEventLoop() && wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    public void shutdown() {
+        isRunning = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        LoggerUtil.INSTANCE.info(String.format("%s started", thread.getName()));
+        while (isRunning) {
+            try {
+                selector.select();
+                wakeupPending.set(false);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    NioConnection connection = (NioConnection) key.attachment();
+                    if (!key.isValid()) {
+                        connection.closeNow();
+                        continue;
+                    }
+                    if (key.isReadable()) {
+                        connection.onReadable();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        connection.flush();
+                    }
+                }
+                runTasks();
+            } catch (Exception e) {
+                LoggerUtil.INSTANCE.severe(String.format("%s loop error", thread.getName()), e);
+            }
+        }
+        closeAll();
+        LoggerUtil.INSTANCE.info(String.format("%s stopped", thread.getName()));
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                LoggerUtil.INSTANCE.severe("Event loop task failed", e);
+            }
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof NioConnection connection) {
+                connection.closeNow();
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // nothing left to do
+        }
+    }
+
+    protected void onRegistered() {
+        connectionCount.incrementAndGet();
+    }
+
+    protected void onDeregistered() {
+        connectionCount.decrementAndGet();
+    }
+}
@@ -0,0 +1,99 @@
+package Project.Server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.function.Consumer;
+
+import Project.Common.LoggerUtil;
+
+/**
+ * Non-blocking server engine: the calling thread accepts connections and hands
+ * each one to an event loop (round robin). Each loop multiplexes many clients
+ * on one thread instead of dedicating a thread per client.
+ */
+public class NioServerEngine {
+    private final NioEventLoop[] loops;
+    private int nextLoop = 0;
+    private volatile boolean isRunning = false;
+    private ServerSocketChannel serverChannel;
+
+    /**
+     * @param loopCount number of event loop threads (minimum 1)
+     * @throws IOException if a selector can't be opened
+     */
+    public NioServerEngine(int loopCount) throws IOException {
+        loops = new NioEventLoop[Math.max(1, loopCount)];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new NioEventLoop("nio-loop-" + i);
+        }
+    }
+
+    /**
+     * Starts the event loops and blocks accepting connections until
+     * {@link #shutdown()} is called or the channel fails
+     *
+     * @param port
+     * @param onInitializationComplete passed to every ServerThread
+     * @throws IOException
+     */
+    public void start(int port, Consumer<ServerThread> onInitializationComplete) throws IOException {
+        for (NioEventLoop loop : loops) {
+            loop.start();
+        }
+        isRunning = true;
+        LoggerUtil.INSTANCE.info(String.format("NIO engine running %s event loops", loops.length));
+        try (ServerSocketChannel channel = ServerSocketChannel.open()) {
+            serverChannel = channel;
+            channel.bind(new InetSocketAddress(port));
+            while (isRunning) {
+                LoggerUtil.INSTANCE.info("Waiting for next client");
+                SocketChannel incomingClient = channel.accept(); // blocking accept, reads are non-blocking
+                LoggerUtil.INSTANCE.info("Client connected");
+                register(incomingClient, onInitializationComplete);
+            }
+        } finally {
+            shutdown();
+        }
+    }
+
+    private void register(SocketChannel incomingClient, Consumer<ServerThread> onInitializationComplete) {
+        NioEventLoop loop = loops[nextLoop];
+        nextLoop = (nextLoop + 1) % loops.length;
+        NioConnection connection = new NioConnection(incomingClient, loop);
+        ServerThread sClient = new ServerThread(connection, onInitializationComplete);
+        loop.execute(() -> {
+            try {
+                connection.register(sClient);
+                sClient.onConnectionOpened();
+            } catch (IOException e) {
+                LoggerUtil.INSTANCE.severe("Failed to register client with event loop", e);
+                connection.closeNow();
+                // closeNow only cleans up connections that were opened, this one never was,
+                // and the ServerThread already counted itself in ServerMetrics
+                sClient.cleanup();
+            }
+        });
+    }
+
+    /**
+     * Stops accepting and closes every loop (and their connections)
+     */
+    public void shutdown() {
+        if (!isRunning) {
+            return;
+        }
+        isRunning = false;
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            // already closed
+        }
+        for (NioEventLoop loop : loops) {
+            loop.shutdown();
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package Project.Server;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import Project.Common.PayloadType;
+
+/**
+ * Bounded queue of encoded frames waiting to be written to one client.
+ * <p>
+ * Producers (Room broadcasts, the client's own reader) never block on socket
+ * I/O: {@link #offer(byte[], PayloadType)} only takes a short lock and applies
+ * the overflow policy when the client isn't keeping up. A single writer per
+ * connection drains the queue. Frames the policy discards are counted in
+ * {@link ServerMetrics} as dropped; the writer counts the rest as sent once
+ * they're written.
+ * </p>
+ */
+public class OutboundQueue {
+
+    /**
+     * What to do when a frame is offered to a full queue
+     */
+    public enum OverflowPolicy {
+        /**
+         * Discard the oldest queued frame to make room
+         */
+        DROP_OLDEST,
+        /**
+         * Discard chat messages (new or queued) but always keep control frames
+         * (joins, leaves, ids...) up to twice the capacity
+         */
+        DROP_CHAT,
+        /**
+         * Treat the client as a slow consumer and disconnect it
+         */
+        DISCONNECT;
+
+        /**
+         * Strict parse for values set at runtime
+         *
+         * @param value policy name (case insensitive)
+         * @return the matching policy
+         * @throws IllegalArgumentException if value doesn't name a policy
+         */
+        public static OverflowPolicy parse(String value) {
+            if (value != null) {
+                for (OverflowPolicy policy : values()) {
+                    if (policy.name().equalsIgnoreCase(value.trim())) {
+                        return policy;
+                    }
+                }
+            }
+            throw new IllegalArgumentException("Unknown overflow policy: " + value);
+        }
+
+        /**
+         * Lenient parse used for system properties
+         *
+         * @param value policy name (case insensitive), may be null
+         * @return the matching policy or DROP_CHAT if it can't be determined
+         */
+        public static OverflowPolicy fromString(String value) {
+            try {
+                return parse(value);
+            } catch (IllegalArgumentException e) {
+                return DROP_CHAT;
+            }
+        }
+    }
+
+    /**
+     * Result of {@link OutboundQueue#offer(byte[], PayloadType)}
+     */
+    public enum OfferResult {
+        QUEUED,
+        /**
+         * Accepted by the connection but dropped (or displaced another frame) per
+         * the overflow policy
+         */
+        DROPPED,
+        /**
+         * The policy says the client should be disconnected
+         */
+        OVERFLOW,
+        /**
+         * Queue was already closed
+         */
+        CLOSED
+    }
+
+    // defaults for new queues; -Dchat.outbound.capacity / -Dchat.outbound.policy
+    private static volatile int defaultCapacity = Integer.getInteger("chat.outbound.capacity", 1024);
+    private static volatile OverflowPolicy defaultPolicy = OverflowPolicy
+            .fromString(System.getProperty("chat.outbound.policy"));
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final ArrayDeque<QueuedFrame> entries = new ArrayDeque<>();
+    private volatile int capacity;
+    private volatile OverflowPolicy policy;
+    private int chatCount = 0; // queued non-control frames, lets DROP_CHAT skip scanning
+    private volatile long droppedCount = 0;
+    private volatile boolean isClosed = false;
+
+    /**
+     * A queued frame plus when it was queued (for flush latency metrics)
+     */
+    public static final class QueuedFrame {
+        private final byte[] frame;
+        private final PayloadType type;
+        private final boolean isControl;
+        private final long enqueuedNanos;
+
+        QueuedFrame(byte[] frame, PayloadType type) {
+            this.frame = frame;
+            this.type = type;
+            this.isControl = type != PayloadType.MESSAGE;
+            this.enqueuedNanos = System.nanoTime();
+        }
+
+        public byte[] getFrame() {
+            return frame;
+        }
+
+        public PayloadType getType() {
+            return type;
+        }
+
+        public long getEnqueuedNanos() {
+            return enqueuedNanos;
+        }
+    }
+
+    public OutboundQueue() {
+        this(defaultCapacity, defaultPolicy);
+    }
+
+    public OutboundQueue(int capacity, OverflowPolicy policy) {
+        this.capacity = Math.max(1, capacity);
+        this.policy = policy;
+    }
+
+    public static int getDefaultCapacity() {
+        return defaultCapacity;
+    }
+
+    public static void setDefaultCapacity(int capacity) {
+        defaultCapacity = Math.max(1, capacity);
+    }
+
+    public static OverflowPolicy getDefaultPolicy() {
+        return defaultPolicy;
+    }
+
+    public static void setDefaultPolicy(OverflowPolicy policy) {
+        defaultPolicy = policy;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    public void setPolicy(OverflowPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * @return frames dropped by the overflow policy so far
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Adds a frame without blocking on I/O
+     *
+     * @param frame encoded bytes
+     * @param type  payload type; only MESSAGE frames are chat that DROP_CHAT
+     *              may discard
+     * @return what happened to the frame
+     */
+    public OfferResult offer(byte[] frame, PayloadType type) {
+        boolean isControl = type != PayloadType.MESSAGE;
+        lock.lock();
+        try {
+            if (isClosed) {
+                return OfferResult.CLOSED;
+            }
+            OfferResult result = OfferResult.QUEUED;
+            if (entries.size() >= capacity) {
+                switch (policy) {
+                    case DISCONNECT:
+                        return OfferResult.OVERFLOW;
+                    case DROP_OLDEST:
+                        remove(entries.pollFirst());
+                        result = OfferResult.DROPPED;
+                        break;
+                    case DROP_CHAT:
+                    default:
+                        if (!isControl) {
+                            droppedCount++;
+                            ServerMetrics.INSTANCE.recordDropped(type, frame.length);
+                            return OfferResult.DROPPED;
+                        }
+                        if (chatCount > 0) {
+                            removeOldestChat();
+                            result = OfferResult.DROPPED;
+                        } else if (entries.size() >= capacity * 2) {
+                            // even control traffic is piling up, the client is gone in practice
+                            return OfferResult.OVERFLOW;
+                        }
+                        break;
+                }
+            }
+            entries.addLast(new QueuedFrame(frame, type));
+            if (!isControl) {
+                chatCount++;
+            }
+            notEmpty.signal();
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remove(QueuedFrame entry) {
+        if (entry != null) {
+            droppedCount++;
+            ServerMetrics.INSTANCE.recordDropped(entry.type, entry.frame.length);
+            if (!entry.isControl) {
+                chatCount--;
+            }
+        }
+    }
+
+    private void removeOldestChat() {
+        Iterator<QueuedFrame> iterator = entries.iterator();
+        while (iterator.hasNext()) {
+            QueuedFrame entry = iterator.next();
+            if (!entry.isControl) {
+                iterator.remove();
+                remove(entry);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the next frame or null if none are queued
+     */
+    public QueuedFrame poll() {
+        lock.lock();
+        try {
+            return pollEntry();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits up to the timeout for the next frame
+     *
+     * @param timeout
+     * @param unit
+     * @return the next frame or null if none arrived (or the queue is closed)
+     * @throws InterruptedException
+     */
+    public QueuedFrame poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (entries.isEmpty() && !isClosed && remaining > 0) {
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+            return pollEntry();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private QueuedFrame pollEntry() {
+        QueuedFrame entry = entries.pollFirst();
+        if (entry != null && !entry.isControl) {
+            chatCount--;
+        }
+        return entry;
+    }
+
+    /**
+     * Waits for the next frame
+     *
+     * @return the next frame, or null once the queue is closed and drained
+     * @throws InterruptedException
+     */
+    public QueuedFrame take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (entries.isEmpty() && !isClosed) {
+                notEmpty.await(1, TimeUnit.SECONDS);
+            }
+            return pollEntry();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isClosed() {
+        return isClosed;
+    }
+
+    /**
+     * Stops accepting frames; already queued frames can still be drained
+     */
+    public void close() {
+        lock.lock();
+        try {
+            isClosed = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes and discards anything still queued
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            isClosed = true;
+            entries.clear();
+            chatCount = 0;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package Project.Server;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event covering one {@link ServerThread#processPayload}
+ * call. Record with e.g.
+ * {@code java -XX:StartFlightRecording=filename=chat.jfr Project.Server.Server}
+ * and filter on "Project.PayloadProcessed" in JMC.
+ */
+@Name("Project.PayloadProcessed")
+@Label("Payload Processed")
+@Category({ "Chat", "Server" })
+@Description("A payload received from a client was handled by its ServerThread")
+@StackTrace(false)
+public class PayloadProcessedEvent extends Event {
+    @Label("Payload Type")
+    public String payloadType;
+
+    @Label("Client Id")
+    public long clientId;
+
+    @Label("Client Name")
+    public String clientName;
+}
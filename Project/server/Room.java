@@ -1,23 +1,56 @@
 package Project.Server;
 
+import Project.Common.BinaryCodec;
 import Project.Common.LoggerUtil;
+import Project.Common.PresenceDeltaPayload;
 import Project.Common.RollPayload;
 import Project.Common.TextFX;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 // */
 public class Room implements AutoCloseable {
     private String name;// unique name of the Room
     protected volatile boolean isRunning = false;
-    private ConcurrentHashMap<Long, ServerThread> clientsInRoom = new ConcurrentHashMap<Long, ServerThread>();
+    // slot-numbered, changed on the mailbox, broadcasts walk its array snapshot
+    private final RoomMembers clientsInRoom = new RoomMembers();
+    // every change to the room and every broadcast runs here, one at a time and
+    // in submission order; nothing holds a lock while writing to clients
+    private final RoomMailbox mailbox;
+    private final ServerMetrics.RoomCounters metrics;
+    // joins/leaves not yet announced to the room, mailbox only
+    private final LinkedHashMap<Long, PresenceChange> pendingPresence = new LinkedHashMap<>();
+    private boolean isPresenceFlushScheduled = false;
+    // members' mutes of each other by id, mailbox only
+    private final MuteIndex muteIndex = new MuteIndex();
 
     public final static String LOBBY = "lobby";
+    // -Dchat.presence.windowMs; 0 announces every join/leave right away
+    private static volatile long presenceWindowMs = Long.getLong("chat.presence.windowMs", 0);
 
-    private void info(String message) {
-        LoggerUtil.INSTANCE.info(String.format("Room[%s]: %s", name, message));
+    private static class PresenceChange {
+        final String clientName;
+        final boolean isJoin;
+
+        PresenceChange(String clientName, boolean isJoin) {
+            this.clientName = clientName;
+            this.isJoin = isJoin;
+        }
+    }
+
+    private void info(String format, Object... args) {
+        // formatted only if INFO is enabled, this runs for every message sent
+        LoggerUtil.INSTANCE.info(() -> String.format("Room[%s]: %s", name,
+                args.length == 0 ? format : String.format(format, args)));
     }
 
     public Room(String name) {
         this.name = name;
+        this.mailbox = new RoomMailbox(name);
+        this.metrics = ServerMetrics.INSTANCE.registerRoom(name);
         isRunning = true;
         info("created");
     }
@@ -26,153 +59,264 @@ public class Room implements AutoCloseable {
         return this.name;
     }
 
-    protected synchronized void addClient(ServerThread client) {
-        if (!isRunning) { // block action if Room isn't running
+    public int getMemberCount() {
+        return clientsInRoom.size();
+    }
+
+    /**
+     * @return tasks waiting on this room's mailbox
+     */
+    public int getPendingTaskCount() {
+        return mailbox.getPendingCount();
+    }
+
+    public static long getPresenceWindowMs() {
+        return presenceWindowMs;
+    }
+
+    /**
+     * Batches joins/leaves over the given window into one PRESENCE_DELTA per
+     * member (0 to announce each one immediately)
+     * 
+     * @param windowMs
+     */
+    public static void setPresenceWindowMs(long windowMs) {
+        presenceWindowMs = Math.max(0, windowMs);
+    }
+
+    protected void addClient(ServerThread client) {
+        mailbox.execute(() -> doAddClient(client));
+    }
+
+    private void doAddClient(ServerThread client) {
+        if (client.getCurrentRoom() != this) {
+            return; // moved on or disconnected before the join was processed
+        }
+        if (!isRunning) { // room closed before the join was processed
+            Server.INSTANCE.joinRoom(Room.LOBBY, client);
             return;
         }
-        if (clientsInRoom.containsKey(client.getClientId())) {
+        if (clientsInRoom.contains(client.getClientId())) {
             info("Attempting to add a client that already exists in the room");
             return;
         }
-        clientsInRoom.put(client.getClientId(), client);
-        client.setCurrentRoom(this);
+        clientsInRoom.add(client); // Server.joinRoom already set the client's room
+        indexMutes(client);
 
         // notify clients of someone joining
-        sendRoomStatus(client.getClientId(), client.getClientName(), true);
+        announcePresence(client, true);
         // sync room state to joiner
-        syncRoomList(client);
+        doSyncRoomList(client);
 
-        info(String.format("%s[%s] joined the Room[%s]", client.getClientName(), client.getClientId(), getName()));
+        info("%s[%s] joined the Room[%s]", client.getClientName(), client.getClientId(), getName());
+    }
 
+    /**
+     * @param client
+     * @return completes once the room processed the leave, including the
+     *         leave notice sent to the client itself
+     */
+    protected CompletableFuture<Void> removedClient(ServerThread client) {
+        return mailbox.submit(() -> doRemovedClient(client));
     }
 
-    protected synchronized void removedClient(ServerThread client) {
+    private void doRemovedClient(ServerThread client) {
         if (!isRunning) { // block action if Room isn't running
             return;
         }
+        if (!clientsInRoom.contains(client.getClientId())) {
+            return; // left again before its join here was processed
+        }
         // notify remaining clients of someone leaving
         // happen before removal so leaving client gets the data
-        sendRoomStatus(client.getClientId(), client.getClientName(), false);
+        announcePresence(client, false);
         clientsInRoom.remove(client.getClientId());
-        LoggerUtil.INSTANCE.fine("Clients remaining in Room: " + clientsInRoom.size());
+        muteIndex.removeClient(client.getClientId());
+        LoggerUtil.INSTANCE.fine("Clients remaining in Room: %s", clientsInRoom.size());
 
-        info(String.format("%s[%s] left the room", client.getClientName(), client.getClientId(), getName()));
+        info("%s[%s] left the room", client.getClientName(), client.getClientId(), getName());
 
         autoCleanup();
-
     }
 
     /**
      * Takes a ServerThread and removes them from the Server
-     * Adding the synchronized keyword ensures that only one thread can execute
-     * these methods at a time,
-     * preventing concurrent modification issues and ensuring thread safety
+     * Runs on the room's mailbox so it never overlaps other room events
      * 
      * @param client
      */
-    protected synchronized void disconnect(ServerThread client) {
+    protected void disconnect(ServerThread client) {
+        mailbox.execute(() -> doDisconnect(client));
+    }
+
+    private void doDisconnect(ServerThread client) {
         if (!isRunning) { // block action if Room isn't running
             return;
         }
         long id = client.getClientId();
-        sendDisconnect(client);
+        // remove first so the leaving client isn't part of the broadcast
+        boolean wasMember = clientsInRoom.remove(id) != null;
+        muteIndex.removeClient(id);
+        if (wasMember) {
+            doSendDisconnect(client);
+        }
         client.disconnect();
         // removedClient(client); // <-- use this just for normal room leaving
-        clientsInRoom.remove(client.getClientId());
-        LoggerUtil.INSTANCE.fine("Clients remaining in Room: " + clientsInRoom.size());
-        
+        LoggerUtil.INSTANCE.fine("Clients remaining in Room: %s", clientsInRoom.size());
+
         // Improved logging with user data
-        info(String.format("%s[%s] disconnected", client.getClientName(), id));
+        info("%s[%s] disconnected", client.getClientName(), id);
         autoCleanup();
     }
 
-    protected synchronized void disconnectAll() {
-        info("Disconnect All triggered");
-        if (!isRunning) {
-            return;
-        }
-        clientsInRoom.values().removeIf(client -> {
-            disconnect(client);
-            return true;
+    /**
+     * Disconnects every member
+     * 
+     * @return completes once the room processed the request
+     */
+    protected CompletableFuture<Void> disconnectAll() {
+        return mailbox.submit(() -> {
+            info("Disconnect All triggered");
+            if (!isRunning) {
+                return;
+            }
+            for (ServerThread client : clientsInRoom.snapshot()) {
+                if (client != null) {
+                    doDisconnect(client);
+                }
+            }
+            info("Disconnect All finished");
+            autoCleanup();
         });
-        info("Disconnect All finished");
-        autoCleanup();
+    }
+
+    /**
+     * Copies the mutes between a joining client and the members into the
+     * index (one pass per join, so broadcasts don't check names at all)
+     *
+     * @param client
+     */
+    private void indexMutes(ServerThread client) {
+        long id = client.getClientId();
+        for (ServerThread member : clientsInRoom.snapshot()) {
+            if (member == null || member.getClientId() == id) {
+                continue;
+            }
+            if (client.isUserMuted(member.getClientName())) {
+                muteIndex.add(member.getClientId(), id);
+            }
+            if (member.isUserMuted(client.getClientName())) {
+                muteIndex.add(id, member.getClientId());
+            }
+        }
     }
 
     /**
      * Attempts to close the room to free up resources if it's empty
      */
     private void autoCleanup() {
-        if (!Room.LOBBY.equalsIgnoreCase(name) && clientsInRoom.isEmpty()) {
-            close();
+        if (isRunning && !Room.LOBBY.equalsIgnoreCase(name) && clientsInRoom.isEmpty()) {
+            doClose();
         }
     }
 
     public void close() {
+        mailbox.execute(this::doClose);
+    }
+
+    private void doClose() {
         // attempt to gracefully close and migrate clients
         if (!clientsInRoom.isEmpty()) {
-            sendMessage(null, "Room is shutting down, migrating to lobby");
-            info(String.format("migrating %s clients", name, clientsInRoom.size()));
-            clientsInRoom.values().removeIf(client -> {
-                Server.INSTANCE.joinRoom(Room.LOBBY, client);
-                return true;
-            });
+            doSendMessage(null, "Room is shutting down, migrating to lobby");
+            info("migrating %s clients", clientsInRoom.size());
+            // joinRoom queues the removal behind this task, by then the room is closed
+            for (ServerThread client : clientsInRoom.snapshot()) {
+                if (client != null) {
+                    Server.INSTANCE.joinRoom(Room.LOBBY, client);
+                }
+            }
         }
         Server.INSTANCE.removeRoom(this);
+        ServerMetrics.INSTANCE.unregisterRoom(name, metrics);
         isRunning = false;
         clientsInRoom.clear();
-        info(String.format("closed", name));
+        muteIndex.clear();
+        pendingPresence.clear();
+        info("closed");
     }
 
     // send/sync data to client(s)
 
     /**
-     * Sends to all clients details of a disconnect client
+     * Sends details of a client's disconnect to every member that's left and to
+     * the leaving client (best effort)
+     * The payload is encoded once and shared by every recipient.
      * @param client
      */
-    protected synchronized void sendDisconnect(ServerThread client) {
-        info(String.format("sending disconnect status to %s recipients", clientsInRoom.size()));
-        clientsInRoom.values().removeIf(clientInRoom -> {
-            boolean failedToSend = !clientInRoom.sendDisconnect(client.getClientId(), client.getClientName());
-            if (failedToSend) {
-                info(String.format("Removing disconnected client[%s] from list", client.getClientId()));
-                disconnect(client);
-            }
-            return failedToSend;
-        });
+    private void doSendDisconnect(ServerThread client) {
+        BroadcastFrame frame = new BroadcastFrame(
+                ServerThread.buildDisconnect(client.getClientId(), client.getClientName()));
+        // anything still pending has to go out before the disconnect
+        flushPresence();
+        info("sending disconnect status to %s recipients", clientsInRoom.size());
+        if (!clientsInRoom.contains(client.getClientId())) {
+            client.sendFrame(frame); // best effort, they're on their way out
+        }
+        broadcast(frame, null);
     }
 
     /**
-     * Syncs info of existing users in room with the client
+     * Syncs info of existing users in room with the client.
+     * Clients on the binary wire format get a single ROOM_ROSTER payload;
+     * legacy clients still get one SYNC_CLIENT per member.
      * 
      * @param client
      */
-    protected synchronized void syncRoomList(ServerThread client) {
+    protected void syncRoomList(ServerThread client) {
+        mailbox.execute(() -> doSyncRoomList(client));
+    }
 
-        clientsInRoom.values().forEach(clientInRoom -> {
-            if (clientInRoom.getClientId() != client.getClientId()) {
-                client.sendClientSync(clientInRoom.getClientId(), clientInRoom.getClientName());
+    private void doSyncRoomList(ServerThread client) {
+        if (client.getWireVersion() < BinaryCodec.VERSION) {
+            for (ServerThread clientInRoom : clientsInRoom.snapshot()) {
+                if (clientInRoom != null && clientInRoom.getClientId() != client.getClientId()) {
+                    client.sendClientSync(clientInRoom.getClientId(), clientInRoom.getClientName());
+                }
             }
-        });
+            return;
+        }
+        // membership doesn't change while we're on the mailbox so the size is exact
+        int others = clientsInRoom.size() - (clientsInRoom.contains(client.getClientId()) ? 1 : 0);
+        long[] ids = new long[others];
+        String[] names = new String[others];
+        int i = 0;
+        for (ServerThread clientInRoom : clientsInRoom.snapshot()) {
+            if (clientInRoom != null && clientInRoom.getClientId() != client.getClientId() && i < others) {
+                ids[i] = clientInRoom.getClientId();
+                names[i] = clientInRoom.getClientName();
+                i++;
+            }
+        }
+        client.sendRoomRoster(getName(), ids, names);
     }
 
     /**
      * Syncs room status of one client to all connected clients
+     * The payload is encoded once and shared by every recipient.
      * 
      * @param clientId
      * @param clientName
      * @param isConnect
      */
-    protected synchronized void sendRoomStatus(long clientId, String clientName, boolean isConnect) {
-        info(String.format("sending room status to %s recipients", clientsInRoom.size()));
-        clientsInRoom.values().removeIf(client -> {
-            boolean failedToSend = !client.sendRoomAction(clientId, clientName, getName(), isConnect);
-            if (failedToSend) {
-                info(String.format("Removing disconnected client[%s] from list", client.getClientId()));
-                disconnect(client);
-            }
-            return failedToSend;
-        });
+    protected void sendRoomStatus(long clientId, String clientName, boolean isConnect) {
+        mailbox.execute(() -> doSendRoomStatus(clientId, clientName, isConnect));
+    }
+
+    private void doSendRoomStatus(long clientId, String clientName, boolean isConnect) {
+        BroadcastFrame frame = new BroadcastFrame(
+                ServerThread.buildRoomAction(clientId, clientName, getName(), isConnect));
+        info("sending room status to %s recipients", clientsInRoom.size());
+        broadcast(frame, null);
     }
 
     /**
@@ -180,15 +324,23 @@ public class Room implements AutoCloseable {
      * Internally calls processCommand and evaluates as necessary.
      * Note: Clients that fail to receive a message get removed from
      * connectedClients.
-     * Adding the synchronized keyword ensures that only one thread can execute
-     * these methods at a time,
-     * preventing concurrent modification issues and ensuring thread safety
+     * The message is encoded once into a BroadcastFrame and the same bytes are
+     * written to every recipient.
+     * Queued on the room's mailbox so messages go out in the order they arrived
      * 
      * @param message
      * @param sender  ServerThread (client) sending the message or null if it's a
      *                server-generated message
      */
-    protected synchronized void sendMessage(ServerThread sender, String message) {
+    protected void sendMessage(ServerThread sender, String message) {
+        long receivedAt = System.nanoTime();
+        mailbox.execute(() -> {
+            doSendMessage(sender, message);
+            ServerMetrics.INSTANCE.getEnqueueLatency().recordSince(receivedAt);
+        });
+    }
+
+    private void doSendMessage(ServerThread sender, String message) {
         if (!isRunning) { // block action if Room isn't running
             return;
         }
@@ -197,24 +349,192 @@ public class Room implements AutoCloseable {
         String formattedMessage = processTextFormatting(message);
 
         long senderId = sender == null ? ServerThread.DEFAULT_CLIENT_ID : sender.getClientId();
+        if (pendingPresence.containsKey(senderId)) {
+            flushPresence(); // members should know the sender before seeing their message
+        }
+
+        info("sending message to %s recipients: %s", clientsInRoom.size(), formattedMessage);
+        BroadcastFrame frame = new BroadcastFrame(ServerThread.buildMessage(senderId, formattedMessage));
+        broadcast(frame, sender);
+    }
+
+    /**
+     * Announces a join or leave, either right away or (in batching mode) with
+     * the next presence delta. The client itself always hears about its own
+     * move right away, from this task: Server.joinRoom waits for the leave
+     * task before joining the next room, so the client's own leave is queued
+     * ahead of the next room's ROOM_ROSTER on both paths. Deferring it to the
+     * flush would let it clear the roster the client just received.
+     *
+     * @param client
+     * @param isJoin
+     */
+    private void announcePresence(ServerThread client, boolean isJoin) {
+        long window = presenceWindowMs;
+        if (window <= 0) {
+            doSendRoomStatus(client.getClientId(), client.getClientName(), isJoin);
+            return;
+        }
+        client.sendRoomAction(client.getClientId(), client.getClientName(), getName(), isJoin);
+        PresenceChange previous = pendingPresence.remove(client.getClientId());
+        if (previous == null || previous.isJoin == isJoin) {
+            pendingPresence.put(client.getClientId(), new PresenceChange(client.getClientName(), isJoin));
+        } // else joined and left (or the reverse) within the window, nothing to tell
+        if (!isPresenceFlushScheduled && !pendingPresence.isEmpty()) {
+            isPresenceFlushScheduled = true;
+            mailbox.schedule(this::flushPresence, window, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sends every pending join/leave as one PRESENCE_DELTA. Legacy wire clients
+     * don't know that type and get the individual ROOM_JOIN payloads instead.
+     */
+    private void flushPresence() {
+        isPresenceFlushScheduled = false;
+        if (pendingPresence.isEmpty()) {
+            return;
+        }
+        int size = pendingPresence.size();
+        long[] ids = new long[size];
+        String[] names = new String[size];
+        boolean[] joins = new boolean[size];
+        int joined = 0;
+        int i = 0;
+        for (Map.Entry<Long, PresenceChange> entry : pendingPresence.entrySet()) {
+            ids[i] = entry.getKey();
+            names[i] = entry.getValue().clientName;
+            joins[i] = entry.getValue().isJoin;
+            joined += joins[i] ? 1 : 0;
+            i++;
+        }
+        pendingPresence.clear();
+        long[] joinedIds = new long[joined];
+        String[] joinedNames = new String[joined];
+        long[] leftIds = new long[size - joined];
+        String[] leftNames = new String[size - joined];
+        for (int j = 0, in = 0, out = 0; j < size; j++) {
+            if (joins[j]) {
+                joinedIds[in] = ids[j];
+                joinedNames[in++] = names[j];
+            } else {
+                leftIds[out] = ids[j];
+                leftNames[out++] = names[j];
+            }
+        }
+        PresenceDeltaPayload delta = new PresenceDeltaPayload();
+        delta.setMessage(getName());
+        delta.setJoined(joinedIds, joinedNames);
+        delta.setLeft(leftIds, leftNames);
+        BroadcastFrame frame = new BroadcastFrame(delta);
+        BroadcastFrame[] legacyFrames = null; // built on first legacy member
+        List<ServerThread> failed = null;
+        int delivered = 0;
+        info("sending presence delta (+%s/-%s) to %s recipients", joined, size - joined, clientsInRoom.size());
+        for (ServerThread client : clientsInRoom.snapshot()) {
+            if (client == null) {
+                continue; // free slot
+            }
+            boolean isSent;
+            if (client.getWireVersion() < BinaryCodec.VERSION) {
+                if (legacyFrames == null) {
+                    legacyFrames = new BroadcastFrame[size];
+                    for (int j = 0; j < size; j++) {
+                        legacyFrames[j] = new BroadcastFrame(
+                                ServerThread.buildRoomAction(ids[j], names[j], getName(), joins[j]));
+                    }
+                }
+                isSent = true;
+                for (BroadcastFrame legacyFrame : legacyFrames) {
+                    isSent &= client.sendFrame(legacyFrame);
+                }
+            } else {
+                isSent = client.sendFrame(frame);
+            }
+            if (isSent) {
+                delivered++;
+            } else {
+                if (failed == null) {
+                    failed = new ArrayList<>();
+                }
+                failed.add(client);
+            }
+        }
+        metrics.recordFanOut(delivered);
+        disconnectFailed(failed);
+    }
 
-        info(String.format("sending message to %s recipients: %s", clientsInRoom.size(), formattedMessage));
-        clientsInRoom.values().removeIf(client -> {
-            
+    /**
+     * Writes the frame to every member, skipping those that muted the sender.
+     * Members that fail to receive it are disconnected after the loop rather
+     * than from inside it.
+     * 
+     * @param frame
+     * @param sender null for server-generated frames (never muted)
+     */
+    private void broadcast(BroadcastFrame frame, ServerThread sender) {
+        List<ServerThread> failed = null;
+        int delivered = 0;
+        int slow = 0;
+        RoomBroadcastEvent event = new RoomBroadcastEvent();
+        boolean isTraced = event.isEnabled();
+        long start = isTraced ? System.nanoTime() : 0;
+        event.begin();
+        // one lookup per message, members only pay an id check if someone muted the sender
+        long[] mutedBy = sender == null ? MuteIndex.NONE : muteIndex.getMutedBy(sender.getClientId());
+        for (ServerThread client : clientsInRoom.snapshot()) {
+            if (client == null) {
+                continue; // free slot
+            }
             // st278 and 07/24/24
-            if (client.isUserMuted(sender.getClientName())) {
-                LoggerUtil.INSTANCE.info("Message from " + sender.getClientName() + " skipped for " + client.getClientName() + " due to being muted");
-                return false; 
+            if (MuteIndex.contains(mutedBy, client.getClientId())) {
+                ServerMetrics.INSTANCE.recordMuteDrop();
+                LoggerUtil.INSTANCE.info("Message from %s skipped for %s due to being muted", sender.getClientName(),
+                        client.getClientName());
+                continue;
             }
-            boolean failedToSend = !client.sendMessage(senderId, formattedMessage);
-            if (failedToSend) {
-                info(String.format("Removing disconnected client[%s] from list", client.getClientId()));
-                disconnect(client);
+            if (client.sendFrame(frame)) {
+                delivered++;
+                if (isTraced && isBacklogged(client)) {
+                    slow++;
+                }
+            } else {
+                if (failed == null) {
+                    failed = new ArrayList<>();
+                }
+                failed.add(client);
             }
-            return failedToSend;
-        });
+        }
+        metrics.recordFanOut(delivered);
+        long elapsed = isTraced ? System.nanoTime() - start : 0;
+        event.end();
+        if (event.shouldCommit()) {
+            event.room = name;
+            event.payloadType = String.valueOf(frame.getPayload().getPayloadType());
+            event.recipients = delivered;
+            event.encodeTime = frame.getEncodeNanos();
+            event.writeTime = Math.max(0, elapsed - event.encodeTime);
+            event.slowRecipients = slow;
+            event.commit();
+        }
+        disconnectFailed(failed);
+    }
 
+    /**
+     * @return true if the client's outbound queue is at least half full
+     */
+    private static boolean isBacklogged(ServerThread client) {
+        OutboundQueue queue = client.getOutboundQueue();
+        return queue != null && queue.size() * 2 >= queue.getCapacity();
+    }
 
+    private void disconnectFailed(List<ServerThread> failed) {
+        if (failed != null) {
+            for (ServerThread client : failed) {
+                info("Removing disconnected client[%s] from list", client.getClientId());
+                doDisconnect(client);
+            }
+        }
     }
     // end send data to client(s)
 
@@ -297,24 +617,9 @@ public class Room implements AutoCloseable {
             return message;
         }
     
-        // Bold: **text**
-        message = message.replaceAll("\\*\\*(.*?)\\*\\*", "<b>$1</b>");
-    
-        // Italic: *text*
-        message = message.replaceAll("\\*(.*?)\\*", "<i>$1</i>");
-    
-        // Underline: __text__
-        message = message.replaceAll("_(.*?)_", "<u>$1</u>");
-    
-        // Colors
-        message = message.replaceAll("#r(.*?)r#", "<font color='red'>$1</font>");
-        message = message.replaceAll("#g(.*?)g#", "<font color='green'>$1</font>");
-        message = message.replaceAll("#b(.*?)b#", "<font color='blue'>$1</font>");
-    
-        // Hex color: #[0-9A-Fa-f]{6}(.*?)#
-        message = message.replaceAll("#([0-9A-Fa-f]{6})(.*?)#", "<font color='#$1'>$2</font>");
-    
-        return message;
+        // Bold **text**, italic *text*, underline _text_, colors #r text r#
+        // (also g/b) and hex colors #RRGGBB text# in a single pass
+        return TextFormatter.format(message);
     }
 
 
@@ -336,17 +641,22 @@ public class Room implements AutoCloseable {
 
 // st278 and 07/24/24
 public void sendPrivateMessage(ServerThread sender, long targetId, String message) {
+    mailbox.execute(() -> doSendPrivateMessage(sender, targetId, message));
+}
+
+private void doSendPrivateMessage(ServerThread sender, long targetId, String message) {
     ServerThread target = clientsInRoom.get(targetId);
     if (target != null) {
         String formattedMessage = String.format("[Private] %s: %s", sender.getClientName(), message);
         
         sender.sendMessage(sender.getClientId(), formattedMessage);
         
-        if (!target.isUserMuted(sender.getClientName())) {
+        if (!MuteIndex.contains(muteIndex.getMutedBy(sender.getClientId()), targetId)) {
             target.sendMessage(sender.getClientId(), formattedMessage);
         } else {
-            LoggerUtil.INSTANCE.info(String.format("Private message from %s to %s was skipped due to mute", 
-                                     sender.getClientName(), target.getClientName()));
+            ServerMetrics.INSTANCE.recordMuteDrop();
+            LoggerUtil.INSTANCE.info("Private message from %s to %s was skipped due to mute",
+                                     sender.getClientName(), target.getClientName());
         }
     } else {
         sender.sendMessage(ServerThread.DEFAULT_CLIENT_ID, "Error: User not found in this room.");
@@ -360,9 +670,20 @@ public void sendPrivateMessage(ServerThread sender, long targetId, String messag
 
     //st278 and 07/28/24
     protected void handleMute(ServerThread sender, long targetId) {
+        // on the mailbox so mute changes don't race the broadcasts reading them
+        mailbox.execute(() -> doHandleMute(sender, targetId));
+    }
+
+    private void doHandleMute(ServerThread sender, long targetId) {
         ServerThread target = clientsInRoom.get(targetId);
         if (target != null) {
             if (sender.addMutedUser(target.getClientName())) {
+                // mutes are by name, so every member using it is muted
+                for (ServerThread member : clientsInRoom.snapshot()) {
+                    if (member != null && member.getClientName().equals(target.getClientName())) {
+                        muteIndex.add(member.getClientId(), sender.getClientId());
+                    }
+                }
                 sender.sendMessage("You have muted " + target.getClientName());
             } else {
                 sender.sendMessage(target.getClientName() + " is already muted");
@@ -373,9 +694,18 @@ public void sendPrivateMessage(ServerThread sender, long targetId, String messag
     }
 
     protected void handleUnmute(ServerThread sender, long targetId) {
+        mailbox.execute(() -> doHandleUnmute(sender, targetId));
+    }
+
+    private void doHandleUnmute(ServerThread sender, long targetId) {
         ServerThread target = clientsInRoom.get(targetId);
         if (target != null) {
             if (sender.removeMutedUser(target.getClientName())) {
+                for (ServerThread member : clientsInRoom.snapshot()) {
+                    if (member != null && member.getClientName().equals(target.getClientName())) {
+                        muteIndex.remove(member.getClientId(), sender.getClientId());
+                    }
+                }
                 sender.sendMessage("You have unmuted " + target.getClientName());
             } else {
                 sender.sendMessage(target.getClientName() + " was not muted");
@@ -387,9 +717,16 @@ public void sendPrivateMessage(ServerThread sender, long targetId, String messag
 
 
     public void sendPrivateSystemMessage(ServerThread sender, String targetUsername, String message) {
-        for (ServerThread client : clientsInRoom.values()) {
-            if (client.getClientName().equals(targetUsername)) {
-                client.sendMessage(ServerThread.DEFAULT_CLIENT_ID, message);
+        mailbox.execute(() -> doSendPrivateSystemMessage(targetUsername, message));
+    }
+
+    private void doSendPrivateSystemMessage(String targetUsername, String message) {
+        // the server's name index narrows it to the sessions using the name,
+        // nearly always one, rather than checking every member
+        for (ServerThread target : Server.INSTANCE.getClientsByName(targetUsername)) {
+            if (target.getClientName().equals(targetUsername)
+                    && clientsInRoom.get(target.getClientId()) == target) {
+                target.sendMessage(ServerThread.DEFAULT_CLIENT_ID, message);
                 break;
             }
         }
@@ -0,0 +1,45 @@
+package Project.Server;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event covering one Room broadcast (chat messages, room
+ * status and disconnect notices), see {@link PayloadProcessedEvent} for how
+ * to record.
+ */
+@Name("Project.RoomBroadcast")
+@Label("Room Broadcast")
+@Category({ "Chat", "Server" })
+@Description("A frame was handed to every member of a room")
+@StackTrace(false)
+public class RoomBroadcastEvent extends Event {
+    @Label("Room")
+    public String room;
+
+    @Label("Payload Type")
+    public String payloadType;
+
+    @Label("Recipients")
+    @Description("Members the frame was handed to")
+    public int recipients;
+
+    @Label("Encode Time")
+    @Description("Time spent serializing the payload, once per wire version")
+    @Timespan(Timespan.NANOSECONDS)
+    public long encodeTime;
+
+    @Label("Write Time")
+    @Description("Time spent handing the encoded frame to the recipients' connections")
+    @Timespan(Timespan.NANOSECONDS)
+    public long writeTime;
+
+    @Label("Slow Recipients")
+    @Description("Recipients whose outbound queue was at least half full after the write")
+    public int slowRecipients;
+}
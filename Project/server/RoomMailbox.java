@@ -0,0 +1,135 @@
+package Project.Server;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import Project.Common.LoggerUtil;
+
+/**
+ * Serial executor giving a Room actor semantics: tasks submitted from any
+ * thread run one at a time, in submission order, on a pool shared by every
+ * Room.
+ * <p>
+ * Only one pool thread works a mailbox at a time so Room state needs no lock,
+ * and different rooms make progress in parallel. A mailbox hands its pool
+ * thread back after a batch of tasks so one busy room can't starve the
+ * others.
+ * </p>
+ */
+public class RoomMailbox implements Executor {
+    private static final int BATCH_SIZE = 64;
+    private static final AtomicInteger threadCount = new AtomicInteger(0);
+    // -Dchat.room.threads, rooms only do CPU work and non-blocking queue offers
+    private static final ExecutorService SHARED_POOL = Executors.newFixedThreadPool(
+            Integer.getInteger("chat.room.threads", Runtime.getRuntime().availableProcessors()), r -> {
+                Thread thread = new Thread(r, "room-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+    // only fires timers, the timed task itself runs on the mailbox
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "room-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String name;
+    private final Executor pool;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean isScheduled = new AtomicBoolean(false);
+
+    public RoomMailbox(String name) {
+        this(name, SHARED_POOL);
+    }
+
+    public RoomMailbox(String name, Executor pool) {
+        this.name = name;
+        this.pool = pool;
+    }
+
+    /**
+     * Queues a task behind everything already submitted
+     */
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        schedule();
+    }
+
+    /**
+     * Like {@link #execute(Runnable)} but lets the caller wait for the task
+     *
+     * @param task
+     * @return completes after the task ran (exceptionally if it threw)
+     */
+    public CompletableFuture<Void> submit(Runnable task) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                task.run();
+                future.complete(null);
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+                throw e;
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Queues a task on this mailbox once the delay passes
+     *
+     * @param task
+     * @param delay
+     * @param unit
+     */
+    public void schedule(Runnable task, long delay, TimeUnit unit) {
+        TIMER.schedule(() -> execute(task), delay, unit);
+    }
+
+    public int getPendingCount() {
+        return tasks.size();
+    }
+
+    /**
+     * @return threads currently started in the pool shared by every Room
+     */
+    public static int getSharedThreadCount() {
+        return ((ThreadPoolExecutor) SHARED_POOL).getPoolSize();
+    }
+
+    private void schedule() {
+        if (isScheduled.compareAndSet(false, true)) {
+            pool.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            Runnable task;
+            int processed = 0;
+            while (processed < BATCH_SIZE && (task = tasks.poll()) != null) {
+                processed++;
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    LoggerUtil.INSTANCE.severe(String.format("Room[%s]: task failed", name), e);
+                }
+            }
+        } finally {
+            isScheduled.set(false);
+            // re-check so a task added after the last poll isn't stranded
+            if (!tasks.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package Project.Server;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A Room's members, each given a dense slot number for as long as they stay.
+ * <p>
+ * Members live in an array indexed by slot. A leaving member's slot is
+ * handed to the next one to join (lowest free first), so the array stays
+ * about as long as the room is big. The array is copy-on-write: joins and
+ * leaves publish a new one, and {@link #snapshot()} hands out the current
+ * one, so a broadcast walks a plain array with no iterator, lambda or boxed
+ * id. Ids map to slots through an open-addressing long to int table, also
+ * without boxing.
+ * </p>
+ * Changes must come from the Room's mailbox; {@link #size()} and
+ * {@link #snapshot()} can be read from anywhere.
+ */
+final class RoomMembers {
+    private static final ServerThread[] EMPTY = new ServerThread[0];
+    private static final long NO_KEY = Long.MIN_VALUE; // never a client id
+
+    private volatile ServerThread[] members = EMPTY; // slot -> member, null if the slot is free
+    private volatile int size = 0;
+    private final BitSet freeSlots = new BitSet(); // free slots below members.length
+    // client id -> slot, linear probing, kept at most half full
+    private long[] keys = newKeys(16);
+    private int[] slots = new int[16];
+
+    private static long[] newKeys(int capacity) {
+        long[] keys = new long[capacity];
+        Arrays.fill(keys, NO_KEY);
+        return keys;
+    }
+
+    /**
+     * @return slot-indexed members with null for free slots; never modify it
+     */
+    ServerThread[] snapshot() {
+        return members;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    boolean contains(long clientId) {
+        return find(clientId) >= 0;
+    }
+
+    /**
+     * @param clientId
+     * @return the member, or null if they aren't in the room
+     */
+    ServerThread get(long clientId) {
+        int index = find(clientId);
+        return index < 0 ? null : members[slots[index]];
+    }
+
+    /**
+     * @param client
+     * @return the slot given to the client, or -1 if they're already a member
+     */
+    int add(ServerThread client) {
+        long clientId = client.getClientId();
+        if (find(clientId) >= 0) {
+            return -1;
+        }
+        ServerThread[] current = members;
+        int slot = freeSlots.nextSetBit(0);
+        ServerThread[] next;
+        if (slot >= 0) {
+            freeSlots.clear(slot);
+            next = current.clone();
+        } else {
+            slot = current.length;
+            next = Arrays.copyOf(current, slot + 1);
+        }
+        next[slot] = client;
+        put(clientId, slot);
+        members = next;
+        size++;
+        return slot;
+    }
+
+    /**
+     * @param clientId
+     * @return the member that was removed, or null if they weren't in the room
+     */
+    ServerThread remove(long clientId) {
+        int index = find(clientId);
+        if (index < 0) {
+            return null;
+        }
+        int slot = slots[index];
+        delete(index);
+        ServerThread[] current = members;
+        ServerThread removed = current[slot];
+        int length = current.length;
+        if (slot == length - 1) {
+            // trim the tail so the array doesn't stay at its peak size
+            length--;
+            while (length > 0 && current[length - 1] == null) {
+                length--;
+            }
+            freeSlots.clear(length, current.length);
+            members = Arrays.copyOf(current, length);
+        } else {
+            ServerThread[] next = current.clone();
+            next[slot] = null;
+            freeSlots.set(slot);
+            members = next;
+        }
+        size--;
+        return removed;
+    }
+
+    void clear() {
+        members = EMPTY;
+        size = 0;
+        freeSlots.clear();
+        keys = newKeys(16);
+        slots = new int[16];
+    }
+
+    // id -> slot table
+
+    private int home(long clientId) {
+        return Long.hashCode(clientId * 0x9E3779B97F4A7C15L) & (keys.length - 1);
+    }
+
+    private int find(long clientId) {
+        for (int i = home(clientId);; i = (i + 1) & (keys.length - 1)) {
+            if (keys[i] == clientId) {
+                return i;
+            }
+            if (keys[i] == NO_KEY) {
+                return -1;
+            }
+        }
+    }
+
+    private void put(long clientId, int slot) {
+        if ((size + 1) * 2 > keys.length) {
+            long[] oldKeys = keys;
+            int[] oldSlots = slots;
+            keys = newKeys(oldKeys.length * 2);
+            slots = new int[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != NO_KEY) {
+                    insert(oldKeys[i], oldSlots[i]);
+                }
+            }
+        }
+        insert(clientId, slot);
+    }
+
+    private void insert(long clientId, int slot) {
+        int i = home(clientId);
+        while (keys[i] != NO_KEY) {
+            i = (i + 1) & (keys.length - 1);
+        }
+        keys[i] = clientId;
+        slots[i] = slot;
+    }
+
+    /**
+     * Empties a table entry, shifting later entries of the same probe run
+     * back so lookups never stop early at the hole
+     */
+    private void delete(int hole) {
+        int mask = keys.length - 1;
+        for (int i = (hole + 1) & mask; keys[i] != NO_KEY; i = (i + 1) & mask) {
+            int home = home(keys[i]);
+            // move it unless its home lies cyclically in (hole, i]
+            boolean isStuck = hole <= i ? (hole < home && home <= i) : (hole < home || home <= i);
+            if (!isStuck) {
+                keys[hole] = keys[i];
+                slots[hole] = slots[i];
+                hole = i;
+            }
+        }
+        keys[hole] = NO_KEY;
+    }
+}
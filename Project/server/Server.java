@@ -4,10 +4,16 @@ import Project.Common.LoggerUtil;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 public enum Server {
     INSTANCE;
@@ -18,6 +24,8 @@ public enum Server {
         config.setFileSizeLimit(2048 * 1024); // 2MB
         config.setFileCount(1);
         config.setLogLocation("server.log");
+        // socket and room threads hand records to a background writer
+        config.setAsync(true);
         // Set the logger configuration
         LoggerUtil.INSTANCE.setConfig(config);
     }
@@ -25,10 +33,13 @@ public enum Server {
     // Use ConcurrentHashMap for thread-safe room management
     private final ConcurrentHashMap<String, Room> rooms = new ConcurrentHashMap<>();
     private boolean isRunning = true;
-    private long nextClientId = 1;
-
-    private static final String MUTE_LIST_DIRECTORY = "mute_lists";
-
+    // ids are handed out from the reader/event loop threads of many clients at once
+    private final AtomicLong nextClientId = new AtomicLong(1);
+    private final ConcurrentHashMap<Long, ServerThread> clients = new ConcurrentHashMap<>();
+    // lower-cased name -> every session using it, oldest first (names aren't
+    // unique, but there's nearly always one); the lists are replaced, never modified
+    private final ConcurrentHashMap<String, List<ServerThread>> clientsByName = new ConcurrentHashMap<>();
+    private NioServerEngine nioEngine; // only set when running with ConnectionMode.NIO
 
     private Server() {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
@@ -37,23 +48,52 @@ public enum Server {
         }));
     }
 
-    private void start(int port) {
+    private void start(int port, ConnectionMode mode) {
         this.port = port;
         // server listening
-        LoggerUtil.INSTANCE.info("Listening on port " + this.port);
+        LoggerUtil.INSTANCE.info(String.format("Listening on port %s (%s engine)", this.port, mode));
+        // replays the mute journal while the listener comes up
+        MuteListStore.INSTANCE.preload();
+        createRoom(Room.LOBBY);// create the first room
+        startMetricsReporting();
+        ServerAdmin.register();
+        if (mode == ConnectionMode.NIO) {
+            startNonBlocking();
+        } else if (mode == ConnectionMode.VIRTUAL) {
+            startBlocking(Thread.ofVirtual().name("client-", 1), Thread.ofVirtual().name("client-writer-", 1));
+        } else {
+            startBlocking(Thread.ofPlatform().name("client-", 1),
+                    Thread.ofPlatform().daemon(true).name("client-writer-", 1));
+        }
+    }
+
+    /**
+     * Thread-per-connection engine: every client gets a ServerThread blocking on
+     * reads
+     * 
+     * @param threads builds the (platform or virtual) reader thread for each client
+     * @param writers builds the matching writer thread that drains its outbound queue
+     */
+    private void startBlocking(Thread.Builder threads, Thread.Builder writers) {
         // Simplified client connection loop
         try (ServerSocket serverSocket = new ServerSocket(port)) {
-            createRoom(Room.LOBBY);// create the first room
             while (isRunning) {
                 LoggerUtil.INSTANCE.info("Waiting for next client");
                 Socket incomingClient = serverSocket.accept(); // blocking action, waits for a client connection
                 LoggerUtil.INSTANCE.info("Client connected");
-                // wrap socket in a ServerThread, pass a callback to notify the Server they're
-                // initialized
-                ServerThread sClient = new ServerThread(incomingClient, this::onClientInitialized);
-                // start the thread (typically an external entity manages the lifecycle and we
-                // don't have the thread start itself)
-                sClient.start();
+                try {
+                    // wrap socket in a ServerThread, pass a callback to notify the Server
+                    // they're initialized
+                    SocketConnection connection = new SocketConnection(incomingClient);
+                    connection.startWriter(writers);
+                    ServerThread sClient = new ServerThread(connection, this::onClientInitialized);
+                    // start the thread (typically an external entity manages the lifecycle and
+                    // we don't have the thread start itself)
+                    sClient.start(threads);
+                } catch (IOException e) {
+                    LoggerUtil.INSTANCE.warning("Error setting up client connection", e);
+                    incomingClient.close();
+                }
             }
         } catch (IOException e) {
             LoggerUtil.INSTANCE.severe("Error accepting connection", e);
@@ -63,6 +103,40 @@ public enum Server {
         }
     }
 
+    /**
+     * Selector based engine: a few event loop threads own all the connections
+     */
+    private void startNonBlocking() {
+        try {
+            nioEngine = new NioServerEngine(Runtime.getRuntime().availableProcessors());
+            nioEngine.start(port, this::onClientInitialized);
+        } catch (IOException e) {
+            LoggerUtil.INSTANCE.severe("Error accepting connection", e);
+        } finally {
+            shutdown();
+            LoggerUtil.INSTANCE.info("Closing server channel");
+        }
+    }
+
+    /**
+     * Logs ServerMetrics every -Dchat.metrics.intervalSec seconds (off by
+     * default, they're always logged at shutdown)
+     */
+    private void startMetricsReporting() {
+        int interval = Integer.getInteger("chat.metrics.intervalSec", 0);
+        if (interval <= 0) {
+            return;
+        }
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(
+                () -> LoggerUtil.INSTANCE.info("Server metrics:%n%s", ServerMetrics.INSTANCE.report()),
+                interval, interval, TimeUnit.SECONDS);
+    }
+
     /**
      * Gracefully disconnect clients
      */
@@ -71,13 +145,21 @@ public enum Server {
             // chose removeIf over forEach to avoid potential
             // ConcurrentModificationException
             // since empty rooms tell the server to remove themselves
+            List<CompletableFuture<Void>> pending = new ArrayList<>();
             rooms.values().removeIf(room -> {
-                room.disconnectAll();
+                pending.add(room.disconnectAll());
                 return true;
             });
+            // rooms process the request on their own mailbox, give them a moment
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
         } catch (Exception e) {
             LoggerUtil.INSTANCE.info("Error cleaning up rooms", e);
         }
+        if (nioEngine != null) {
+            nioEngine.shutdown();
+        }
+        MuteListStore.INSTANCE.close();
+        LoggerUtil.INSTANCE.info("Server metrics:%n%s", ServerMetrics.INSTANCE.report());
     }
 
     /**
@@ -87,11 +169,14 @@ public enum Server {
      * @param sClient
      */
     private void onClientInitialized(ServerThread sClient) {
-        sClient.sendClientId(nextClientId);
-        nextClientId++;
-        if (nextClientId < 0) {
-            nextClientId = 1;
-        }
+        long clientId = nextClientId.getAndUpdate(id -> id == Long.MAX_VALUE ? 1 : id + 1);
+        clients.put(clientId, sClient);
+        clientsByName.merge(nameKey(sClient.getClientName()), List.of(sClient), (named, added) -> {
+            List<ServerThread> both = new ArrayList<>(named);
+            both.addAll(added);
+            return List.copyOf(both);
+        });
+        sClient.sendClientId(clientId);
         // add to lobby room
         LoggerUtil.INSTANCE.info(String.format("Server: *%s[%s] initialized*",
                 sClient.getClientName(), sClient.getClientId()));
@@ -128,11 +213,18 @@ public enum Server {
             return false;
         }
         Room current = client.getCurrentRoom();
-        if (current != null) {
-            current.removedClient(client);
-        }
         Room next = rooms.get(nameCheck);
-        next.addClient(client);
+        // rooms apply the move asynchronously, point the client at the new room now
+        // so anything it sends next already goes there
+        client.setCurrentRoom(next);
+        if (current == null) {
+            next.addClient(client);
+        } else {
+            // the rooms run on different mailboxes, so only join once the old room
+            // has sent the client its own leave; arriving after the new roster it
+            // would clear the client's member list
+            current.removedClient(client).whenComplete((done, e) -> next.addClient(client));
+        }
         return true;
     }
 
@@ -149,6 +241,68 @@ public enum Server {
         LoggerUtil.INSTANCE.info(String.format("Server removed room %s", room.getName()));
     }
 
+    /**
+     * Forgets a client once its connection is cleaned up
+     * 
+     * @param client
+     */
+    protected void removeClient(ServerThread client) {
+        clients.remove(client.getClientId(), client);
+        if (client.getClientName() != null) {
+            clientsByName.computeIfPresent(nameKey(client.getClientName()), (key, named) -> {
+                List<ServerThread> rest = new ArrayList<>(named);
+                rest.remove(client);
+                return rest.isEmpty() ? null : List.copyOf(rest);
+            });
+        }
+    }
+
+    protected ServerThread getClient(long clientId) {
+        return clients.get(clientId);
+    }
+
+    /**
+     * @param clientName matched ignoring case
+     * @return the connected sessions with that name, oldest first (empty if
+     *         none); don't modify it
+     */
+    protected List<ServerThread> getClientsByName(String clientName) {
+        return clientsByName.getOrDefault(nameKey(clientName), List.of());
+    }
+
+    private static String nameKey(String clientName) {
+        return clientName.toLowerCase(Locale.ROOT);
+    }
+
+    protected Collection<ServerThread> getClients() {
+        return clients.values();
+    }
+
+    protected Collection<Room> getRooms() {
+        return rooms.values();
+    }
+
+    /**
+     * Disconnects a client by id through its current room
+     * 
+     * @param clientId
+     * @return false if no such client is connected
+     */
+    protected boolean kickClient(long clientId) {
+        ServerThread client = clients.get(clientId);
+        if (client == null) {
+            return false;
+        }
+        LoggerUtil.INSTANCE.info("Server: kicking %s[%s]", client.getClientName(), clientId);
+        Room room = client.getCurrentRoom();
+        if (room != null) {
+            room.disconnect(client);
+        } else {
+            client.disconnect();
+        }
+        return true;
+    }
+
     public static void main(String[] args) {
         LoggerUtil.INSTANCE.info("Server Starting");
         Server server = Server.INSTANCE;
@@ -159,16 +313,9 @@ public enum Server {
             // can ignore, will either be index out of bounds or type mismatch
             // will default to the defined value prior to the try/catch
         }
-        server.start(port);
+        // optional second argument picks the engine: blocking (default), virtual or nio
+        ConnectionMode mode = ConnectionMode.fromString(args.length > 1 ? args[1] : null);
+        server.start(port, mode);
         LoggerUtil.INSTANCE.info("Server Stopped");
     }
-    static {
-        // This block will run when the Server class is first loaded
-        try {
-            Files.createDirectories(Paths.get(MUTE_LIST_DIRECTORY));
-            LoggerUtil.INSTANCE.info("Mute lists directory created or already exists: " + MUTE_LIST_DIRECTORY);
-        } catch (IOException e) {
-            LoggerUtil.INSTANCE.severe("Error creating mute_lists directory", e);
-        }
-    }
 }
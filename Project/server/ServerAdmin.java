@@ -0,0 +1,192 @@
+package Project.Server;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import Project.Common.LoggerUtil;
+
+/**
+ * Platform MBean exposing live server state and runtime tuning knobs. Reads
+ * are snapshots of concurrent structures, nothing here takes a room's turn on
+ * its mailbox.
+ */
+public class ServerAdmin implements ServerAdminMXBean {
+    public static final String OBJECT_NAME = "Project.Server:type=ServerAdmin";
+
+    private final Server server;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    ServerAdmin(Server server) {
+        this.server = server;
+    }
+
+    /**
+     * Registers the MBean with the platform MBean server; failures are logged
+     * and otherwise ignored since the server works fine without it
+     *
+     * @return true if registered
+     */
+    protected static boolean register() {
+        try {
+            MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!mbeans.isRegistered(name)) {
+                mbeans.registerMBean(new ServerAdmin(Server.INSTANCE), name);
+            }
+            LoggerUtil.INSTANCE.info("Registered MBean " + OBJECT_NAME);
+            return true;
+        } catch (JMException e) {
+            LoggerUtil.INSTANCE.warning("Could not register MBean " + OBJECT_NAME, e);
+            return false;
+        }
+    }
+
+    @Override
+    public int getRoomCount() {
+        return server.getRooms().size();
+    }
+
+    @Override
+    public Map<String, Integer> getRoomMembers() {
+        Map<String, Integer> members = new TreeMap<>();
+        for (Room room : server.getRooms()) {
+            members.put(room.getName(), room.getMemberCount());
+        }
+        return members;
+    }
+
+    @Override
+    public Map<String, Integer> getRoomMailboxDepths() {
+        Map<String, Integer> depths = new TreeMap<>();
+        for (Room room : server.getRooms()) {
+            depths.put(room.getName(), room.getPendingTaskCount());
+        }
+        return depths;
+    }
+
+    @Override
+    public int getConnectedClients() {
+        return server.getClients().size();
+    }
+
+    @Override
+    public Map<Long, String> getClients() {
+        Map<Long, String> clients = new TreeMap<>();
+        for (ServerThread client : server.getClients()) {
+            clients.put(client.getClientId(), client.getClientName());
+        }
+        return clients;
+    }
+
+    @Override
+    public int getThreadCount() {
+        return threads.getThreadCount();
+    }
+
+    @Override
+    public int getPeakThreadCount() {
+        return threads.getPeakThreadCount();
+    }
+
+    @Override
+    public int getRoomThreadCount() {
+        return RoomMailbox.getSharedThreadCount();
+    }
+
+    @Override
+    public Map<String, Integer> getQueueDepths() {
+        return ServerMetrics.INSTANCE.getQueueDepths();
+    }
+
+    @Override
+    public int getMaxQueueDepth() {
+        return ServerMetrics.INSTANCE.getMaxQueueDepth();
+    }
+
+    @Override
+    public String getLogLevel() {
+        return LoggerUtil.INSTANCE.getLevel().getName();
+    }
+
+    @Override
+    public void setLogLevel(String level) {
+        // Level.parse throws IllegalArgumentException, which JMX reports to the caller
+        LoggerUtil.INSTANCE.setLevel(Level.parse(level.trim().toUpperCase()));
+        LoggerUtil.INSTANCE.info("Log level changed to " + level);
+    }
+
+    @Override
+    public long getDroppedLogRecords() {
+        return LoggerUtil.INSTANCE.getDroppedCount();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return OutboundQueue.getDefaultCapacity();
+    }
+
+    @Override
+    public void setQueueCapacity(int capacity) {
+        OutboundQueue.setDefaultCapacity(capacity);
+        for (ServerThread client : server.getClients()) {
+            OutboundQueue queue = client.getOutboundQueue();
+            if (queue != null) {
+                queue.setCapacity(capacity);
+            }
+        }
+        LoggerUtil.INSTANCE.info("Outbound queue capacity changed to %s", OutboundQueue.getDefaultCapacity());
+    }
+
+    @Override
+    public String getQueuePolicy() {
+        return OutboundQueue.getDefaultPolicy().name();
+    }
+
+    @Override
+    public void setQueuePolicy(String policy) {
+        // a typo throws IllegalArgumentException back to the caller instead of
+        // quietly switching every queue to the default
+        OutboundQueue.OverflowPolicy parsed = OutboundQueue.OverflowPolicy.parse(policy);
+        OutboundQueue.setDefaultPolicy(parsed);
+        for (ServerThread client : server.getClients()) {
+            OutboundQueue queue = client.getOutboundQueue();
+            if (queue != null) {
+                queue.setPolicy(parsed);
+            }
+        }
+        LoggerUtil.INSTANCE.info("Outbound queue policy changed to " + parsed);
+    }
+
+    @Override
+    public long getPresenceWindowMs() {
+        return Room.getPresenceWindowMs();
+    }
+
+    @Override
+    public void setPresenceWindowMs(long windowMs) {
+        Room.setPresenceWindowMs(windowMs);
+        LoggerUtil.INSTANCE.info("Presence window changed to %sms", Room.getPresenceWindowMs());
+    }
+
+    @Override
+    public String getMetricsReport() {
+        return ServerMetrics.INSTANCE.report();
+    }
+
+    @Override
+    public void resetMetrics() {
+        ServerMetrics.INSTANCE.reset();
+    }
+
+    @Override
+    public boolean kickClient(long clientId) {
+        return server.kickClient(clientId);
+    }
+}
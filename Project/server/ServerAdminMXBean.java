@@ -0,0 +1,108 @@
+package Project.Server;
+
+import java.util.Map;
+
+/**
+ * Management interface registered as "Project.Server:type=ServerAdmin" so a
+ * running server can be inspected and tuned from JConsole/JMC.
+ */
+public interface ServerAdminMXBean {
+
+    int getRoomCount();
+
+    /**
+     * @return members per room, by room name
+     */
+    Map<String, Integer> getRoomMembers();
+
+    /**
+     * @return tasks waiting on each room's mailbox, by room name
+     */
+    Map<String, Integer> getRoomMailboxDepths();
+
+    /**
+     * @return clients that completed CLIENT_CONNECT
+     */
+    int getConnectedClients();
+
+    /**
+     * @return "name" of every connected client, by client id
+     */
+    Map<Long, String> getClients();
+
+    /**
+     * @return live JVM platform threads (virtual threads aren't counted)
+     */
+    int getThreadCount();
+
+    int getPeakThreadCount();
+
+    /**
+     * @return threads in the pool that runs room mailboxes
+     */
+    int getRoomThreadCount();
+
+    /**
+     * @return frames waiting in each connection's outbound queue, by
+     *         "name(id)"
+     */
+    Map<String, Integer> getQueueDepths();
+
+    int getMaxQueueDepth();
+
+    /**
+     * @return lowest level written to the log file or console
+     */
+    String getLogLevel();
+
+    /**
+     * @param level a java.util.logging level name, e.g. INFO or FINE
+     */
+    void setLogLevel(String level);
+
+    /**
+     * @return records the async logger dropped because its buffer was full
+     */
+    long getDroppedLogRecords();
+
+    int getQueueCapacity();
+
+    /**
+     * Applies to new connections and every open one
+     *
+     * @param capacity frames per outbound queue
+     */
+    void setQueueCapacity(int capacity);
+
+    String getQueuePolicy();
+
+    /**
+     * Applies to new connections and every open one
+     *
+     * @param policy DROP_OLDEST, DROP_CHAT or DISCONNECT
+     * @throws IllegalArgumentException for any other name
+     */
+    void setQueuePolicy(String policy);
+
+    long getPresenceWindowMs();
+
+    /**
+     * @param windowMs 0 announces joins/leaves immediately
+     */
+    void setPresenceWindowMs(long windowMs);
+
+    /**
+     * @return ServerMetrics and write coalescing summary
+     */
+    String getMetricsReport();
+
+    void resetMetrics();
+
+    /**
+     * Disconnects a client
+     *
+     * @param clientId
+     * @return false if no client has that id
+     */
+    boolean kickClient(long clientId);
+}
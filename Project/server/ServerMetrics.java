@@ -0,0 +1,312 @@
+package Project.Server;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import Project.Common.LatencyHistogram;
+import Project.Common.PayloadType;
+
+/**
+ * Server-wide counters: payloads and bytes in/out per PayloadType, frames
+ * the outbound queues dropped, fan-out per Room, connections and their
+ * outbound queue depths, mute filter drops and how long a message takes from
+ * being received to being queued for its recipients. Socket level write batching lives in
+ * {@link FlushStats} and is included in {@link #report()}.
+ * <p>
+ * Recording is lock free (striped adders, no map lookups on the hot path) so
+ * reader threads and room mailboxes can all report here without contending.
+ * </p>
+ */
+public enum ServerMetrics {
+    INSTANCE;
+
+    private static final PayloadType[] TYPES = PayloadType.values();
+    private static final int UNKNOWN_TYPE = TYPES.length; // payloads with no type set
+
+    // indexed by PayloadType ordinal plus UNKNOWN_TYPE (enum field initializers
+    // can't read the static constants, hence values())
+    private final LongAdder[] messagesIn = adders(PayloadType.values().length + 1);
+    private final LongAdder[] bytesIn = adders(PayloadType.values().length + 1);
+    private final LongAdder[] messagesOut = adders(PayloadType.values().length + 1);
+    private final LongAdder[] bytesOut = adders(PayloadType.values().length + 1);
+    private final LongAdder[] messagesDropped = adders(PayloadType.values().length + 1);
+    private final LongAdder[] bytesDropped = adders(PayloadType.values().length + 1);
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder connectionsClosed = new LongAdder();
+    private final LongAdder muteDrops = new LongAdder();
+    private final Set<ServerThread> connections = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<String, RoomCounters> rooms = new ConcurrentHashMap<>();
+    // receive to the last recipient's connection.write() in Room.sendMessage,
+    // i.e. to enqueue; the socket write after it is in FlushStats
+    private final LatencyHistogram enqueueLatency = new LatencyHistogram();
+
+    /**
+     * Broadcast counters for one Room; the Room holds on to its instance so
+     * recording doesn't touch the map
+     */
+    public static final class RoomCounters {
+        private final LongAdder broadcasts = new LongAdder();
+        private final LongAdder deliveries = new LongAdder();
+
+        /**
+         * Records one broadcast
+         *
+         * @param recipients members the frame was handed to
+         */
+        public void recordFanOut(int recipients) {
+            broadcasts.increment();
+            deliveries.add(recipients);
+        }
+
+        public long getBroadcastCount() {
+            return broadcasts.sum();
+        }
+
+        public long getDeliveryCount() {
+            return deliveries.sum();
+        }
+
+        /**
+         * @return average recipients per broadcast
+         */
+        public double getAverageFanOut() {
+            long count = broadcasts.sum();
+            return count == 0 ? 0 : (double) deliveries.sum() / count;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("broadcasts=%s deliveries=%s avgFanOut=%.1f", getBroadcastCount(),
+                    getDeliveryCount(), getAverageFanOut());
+        }
+    }
+
+    private static LongAdder[] adders(int size) {
+        LongAdder[] adders = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static int indexOf(PayloadType type) {
+        return type == null ? UNKNOWN_TYPE : type.ordinal();
+    }
+
+    /**
+     * Records a payload decoded from a client
+     *
+     * @param type
+     * @param frameBytes frame size including the length header
+     */
+    public void recordReceived(PayloadType type, int frameBytes) {
+        int index = indexOf(type);
+        messagesIn[index].increment();
+        bytesIn[index].add(frameBytes);
+    }
+
+    /**
+     * Records a frame written to a client's socket
+     *
+     * @param type
+     * @param frameBytes frame size including the length header
+     */
+    public void recordSent(PayloadType type, int frameBytes) {
+        int index = indexOf(type);
+        messagesOut[index].increment();
+        bytesOut[index].add(frameBytes);
+    }
+
+    /**
+     * Records a frame an outbound queue's overflow policy discarded
+     *
+     * @param type
+     * @param frameBytes frame size including the length header
+     */
+    public void recordDropped(PayloadType type, int frameBytes) {
+        int index = indexOf(type);
+        messagesDropped[index].increment();
+        bytesDropped[index].add(frameBytes);
+    }
+
+    public void recordMuteDrop() {
+        muteDrops.increment();
+    }
+
+    public void connectionOpened(ServerThread client) {
+        if (connections.add(client)) {
+            connectionsOpened.increment();
+        }
+    }
+
+    /**
+     * Safe to call more than once per connection
+     *
+     * @param client
+     */
+    public void connectionClosed(ServerThread client) {
+        if (connections.remove(client)) {
+            connectionsClosed.increment();
+        }
+    }
+
+    /**
+     * Gets (creating if needed) the counters for a Room
+     *
+     * @param roomName
+     * @return counters the Room should keep a reference to
+     */
+    public RoomCounters registerRoom(String roomName) {
+        return rooms.computeIfAbsent(roomName, name -> new RoomCounters());
+    }
+
+    /**
+     * Forgets a closed Room's counters, unless a new Room with the same name
+     * already replaced them
+     *
+     * @param roomName
+     * @param counters what the closing Room registered
+     */
+    public void unregisterRoom(String roomName, RoomCounters counters) {
+        rooms.remove(roomName, counters);
+    }
+
+    /**
+     * @return time from a message being received to it being queued for every
+     *         recipient
+     */
+    public LatencyHistogram getEnqueueLatency() {
+        return enqueueLatency;
+    }
+
+    public long getMessagesIn(PayloadType type) {
+        return messagesIn[indexOf(type)].sum();
+    }
+
+    public long getBytesIn(PayloadType type) {
+        return bytesIn[indexOf(type)].sum();
+    }
+
+    public long getMessagesOut(PayloadType type) {
+        return messagesOut[indexOf(type)].sum();
+    }
+
+    public long getBytesOut(PayloadType type) {
+        return bytesOut[indexOf(type)].sum();
+    }
+
+    public long getMessagesDropped(PayloadType type) {
+        return messagesDropped[indexOf(type)].sum();
+    }
+
+    public long getBytesDropped(PayloadType type) {
+        return bytesDropped[indexOf(type)].sum();
+    }
+
+    public long getTotalBytesIn() {
+        return sum(bytesIn);
+    }
+
+    public long getTotalBytesOut() {
+        return sum(bytesOut);
+    }
+
+    public long getMuteDropCount() {
+        return muteDrops.sum();
+    }
+
+    public int getActiveConnections() {
+        return connections.size();
+    }
+
+    public long getTotalConnections() {
+        return connectionsOpened.sum();
+    }
+
+    public long getClosedConnections() {
+        return connectionsClosed.sum();
+    }
+
+    /**
+     * @return live view of the per-room counters by room name
+     */
+    public Map<String, RoomCounters> getRoomCounters() {
+        return Collections.unmodifiableMap(rooms);
+    }
+
+    /**
+     * @return frames waiting in each open connection's outbound queue, by
+     *         "name(id)"
+     */
+    public Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> depths = new LinkedHashMap<>();
+        for (ServerThread client : connections) {
+            depths.put(String.format("%s(%s)", client.getClientName(), client.getClientId()),
+                    client.getQueueDepth());
+        }
+        return depths;
+    }
+
+    public int getMaxQueueDepth() {
+        int deepest = 0;
+        for (ServerThread client : connections) {
+            deepest = Math.max(deepest, client.getQueueDepth());
+        }
+        return deepest;
+    }
+
+    private static long sum(LongAdder[] adders) {
+        long total = 0;
+        for (LongAdder adder : adders) {
+            total += adder.sum();
+        }
+        return total;
+    }
+
+    public void reset() {
+        for (int i = 0; i <= TYPES.length; i++) {
+            messagesIn[i].reset();
+            bytesIn[i].reset();
+            messagesOut[i].reset();
+            bytesOut[i].reset();
+            messagesDropped[i].reset();
+            bytesDropped[i].reset();
+        }
+        muteDrops.reset();
+        enqueueLatency.reset();
+        rooms.values().forEach(counters -> {
+            counters.broadcasts.reset();
+            counters.deliveries.reset();
+        });
+        FlushStats.INSTANCE.reset();
+    }
+
+    /**
+     * @return multi-line summary of everything recorded, for logging
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("connections: active=%s total=%s closed=%s maxQueueDepth=%s%n",
+                getActiveConnections(), getTotalConnections(), getClosedConnections(), getMaxQueueDepth()));
+        for (int i = 0; i <= TYPES.length; i++) {
+            long in = messagesIn[i].sum();
+            long out = messagesOut[i].sum();
+            long dropped = messagesDropped[i].sum();
+            if (in == 0 && out == 0 && dropped == 0) {
+                continue;
+            }
+            sb.append(String.format("  %-16s in=%s (%s bytes) out=%s (%s bytes) dropped=%s (%s bytes)%n",
+                    i == UNKNOWN_TYPE ? "UNKNOWN" : TYPES[i], in, bytesIn[i].sum(), out, bytesOut[i].sum(),
+                    dropped, bytesDropped[i].sum()));
+        }
+        rooms.forEach((name, counters) -> sb.append(String.format("  room %s: %s%n", name, counters)));
+        sb.append(String.format("mute drops: %s%n", getMuteDropCount()));
+        sb.append(String.format("message receive to enqueue latency: %s%n", enqueueLatency));
+        sb.append("write coalescing: ").append(FlushStats.INSTANCE);
+        return sb.toString();
+    }
+}
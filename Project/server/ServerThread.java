@@ -1,17 +1,14 @@
 package Project.Server;
 
 import Project.Common.ConnectionPayload;
+import Project.Common.FrameCodec;
 import Project.Common.LoggerUtil;
 import Project.Common.Payload;
 import Project.Common.PayloadType;
 import Project.Common.RollPayload;
 import Project.Common.RoomResultsPayload;
-import java.io.File;
-import java.io.IOException;
-import java.net.Socket;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.HashSet;
+import Project.Common.RoomRosterPayload;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
@@ -27,30 +24,29 @@ public class ServerThread extends BaseServerThread {
     private long clientId;
     private String clientName;
     private Consumer<ServerThread> onInitializationComplete; // callback to inform when this object is ready
-    private Set<String> mutedUsers = new HashSet<>();
-    private static final String MUTE_LIST_DIRECTORY = "mute_lists";
+    // the store's live set for this user, read by room threads without a lock
+    private Set<String> mutedUsers = Collections.emptySet();
 
 
     
 
 
     /**
-     * Wraps the Socket connection and takes a Server reference and a callback
+     * Wraps the client connection and takes a callback
      * 
-     * @param myClient
-     * @param server
+     * @param myClient                 blocking SocketConnection or NioConnection
      * @param onInitializationComplete method to inform listener that this object is
      *                                 ready
      */
-    protected ServerThread(Socket myClient, Consumer<ServerThread> onInitializationComplete) {
-        Objects.requireNonNull(myClient, "Client socket cannot be null");
+    protected ServerThread(ClientConnection myClient, Consumer<ServerThread> onInitializationComplete) {
+        Objects.requireNonNull(myClient, "Client connection cannot be null");
         Objects.requireNonNull(onInitializationComplete, "callback cannot be null");
         info("ServerThread created");
         // get communication channels to single client
-        this.client = myClient;
+        this.connection = myClient;
         this.clientId = ServerThread.DEFAULT_CLIENT_ID;// this is updated later by the server
         this.onInitializationComplete = onInitializationComplete;
-
+        ServerMetrics.INSTANCE.connectionOpened(this);
     }
 
 
@@ -60,8 +56,15 @@ public class ServerThread extends BaseServerThread {
             throw new NullPointerException("Client name can't be null");
         }
         this.clientName = name;
-        loadMuteList(); // Loads the mute list after setting the client name
-        onInitialized();
+        mutedUsers = MuteListStore.INSTANCE.getMuteList(name);
+        // joining a room indexes the mute list, so wait (without blocking this
+        // thread, possibly an NIO loop) until the store has loaded it
+        MuteListStore.INSTANCE.preload().whenComplete((loaded, e) -> {
+            if (e != null) {
+                LoggerUtil.INSTANCE.severe("Mute lists failed to load, continuing without them", e);
+            }
+            onInitialized();
+        });
     }
 
     public String getClientName() {
@@ -90,12 +93,14 @@ public class ServerThread extends BaseServerThread {
 
     @Override
     protected void info(String message) {
-        LoggerUtil.INSTANCE.info(String.format("ServerThread[%s(%s)]: %s", getClientName(), getClientId(), message));
+        LoggerUtil.INSTANCE.info(() -> String.format("ServerThread[%s(%s)]: %s", getClientName(), getClientId(), message));
     }
 
     @Override
     protected void cleanup() {
         currentRoom = null;
+        ServerMetrics.INSTANCE.connectionClosed(this);
+        Server.INSTANCE.removeClient(this);
         super.cleanup();
     }
 
@@ -108,11 +113,15 @@ public class ServerThread extends BaseServerThread {
     // handle received message from the Client
     @Override
     protected void processPayload(Payload payload) {
-        LoggerUtil.INSTANCE.fine("Received Payload: " + payload);
+        LoggerUtil.INSTANCE.fine(() -> "Received Payload: " + payload);
+        PayloadProcessedEvent event = new PayloadProcessedEvent();
+        event.begin();
         try {
             switch (payload.getPayloadType()) {
                 case CLIENT_CONNECT:
                     ConnectionPayload cp = (ConnectionPayload) payload;
+                    // agree on the wire format before anything is sent back
+                    wireVersion = FrameCodec.negotiate(cp.getWireVersion());
                     setClientName(cp.getClientName());
                     break;
                 case MESSAGE:
@@ -161,6 +170,14 @@ public class ServerThread extends BaseServerThread {
         } catch (Exception e) {
             LoggerUtil.INSTANCE.severe("Could not process Payload: " + payload,e);
         
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.payloadType = String.valueOf(payload.getPayloadType());
+                event.clientId = clientId;
+                event.clientName = clientName;
+                event.commit();
+            }
         }
     }
 
@@ -181,6 +198,21 @@ public class ServerThread extends BaseServerThread {
         return send(cp);
     }
 
+    /**
+     * Sends every member of a room in one payload
+     * 
+     * @param room        room name
+     * @param clientIds
+     * @param clientNames same order as clientIds
+     * @return success of sending the payload
+     */
+    public boolean sendRoomRoster(String room, long[] clientIds, String[] clientNames) {
+        RoomRosterPayload rrp = new RoomRosterPayload();
+        rrp.setMessage(room);
+        rrp.setClients(clientIds, clientNames);
+        return send(rrp);
+    }
+
     /**
      * Overload of sendMessage used for server-side generated messages
      * 
@@ -199,11 +231,7 @@ public class ServerThread extends BaseServerThread {
      * @return @see {@link #send(Payload)}
      */
     public boolean sendMessage(long senderId, String message) {
-        Payload p = new Payload();
-        p.setClientId(senderId);
-        p.setMessage(message);
-        p.setPayloadType(PayloadType.MESSAGE);
-        return send(p);
+        return send(buildMessage(senderId, message));
     }
 
     /**
@@ -216,13 +244,7 @@ public class ServerThread extends BaseServerThread {
      * @return success of sending the payload
      */
     public boolean sendRoomAction(long clientId, String clientName, String room, boolean isJoin) {
-        ConnectionPayload cp = new ConnectionPayload();
-        cp.setPayloadType(PayloadType.ROOM_JOIN);
-        cp.setConnect(isJoin); // <-- determine if join or leave
-        cp.setMessage(room);
-        cp.setClientId(clientId);
-        cp.setClientName(clientName);
-        return send(cp);
+        return send(buildRoomAction(clientId, clientName, room, isJoin));
     }
 
     /**
@@ -233,12 +255,7 @@ public class ServerThread extends BaseServerThread {
      * @return success of sending the payload
      */
     public boolean sendDisconnect(long clientId, String clientName) {
-        ConnectionPayload cp = new ConnectionPayload();
-        cp.setPayloadType(PayloadType.DISCONNECT);
-        cp.setConnect(false);
-        cp.setClientId(clientId);
-        cp.setClientName(clientName);
-        return send(cp);
+        return send(buildDisconnect(clientId, clientName));
     }
 
     /**
@@ -254,17 +271,50 @@ public class ServerThread extends BaseServerThread {
         cp.setConnect(true);
         cp.setClientId(clientId);
         cp.setClientName(clientName);
+        cp.setWireVersion(wireVersion); // lets the client switch its own encoding
         return send(cp);
     }
 
     // end send methods
 
+    // payload builders, shared with Room so broadcasts can be encoded once
+
+    protected static Payload buildMessage(long senderId, String message) {
+        Payload p = new Payload();
+        p.setClientId(senderId);
+        p.setMessage(message);
+        p.setPayloadType(PayloadType.MESSAGE);
+        return p;
+    }
+
+    protected static ConnectionPayload buildRoomAction(long clientId, String clientName, String room,
+            boolean isJoin) {
+        ConnectionPayload cp = new ConnectionPayload();
+        cp.setPayloadType(PayloadType.ROOM_JOIN);
+        cp.setConnect(isJoin); // <-- determine if join or leave
+        cp.setMessage(room);
+        cp.setClientId(clientId);
+        cp.setClientName(clientName);
+        return cp;
+    }
+
+    protected static ConnectionPayload buildDisconnect(long clientId, String clientName) {
+        ConnectionPayload cp = new ConnectionPayload();
+        cp.setPayloadType(PayloadType.DISCONNECT);
+        cp.setConnect(false);
+        cp.setClientId(clientId);
+        cp.setClientName(clientName);
+        return cp;
+    }
+
+    // end payload builders
+
 
     //st278 and 07/28/24
     public boolean addMutedUser(String username) {
-        boolean added = mutedUsers.add(username);
+        // persisted in the background, the socket thread never waits on the disk
+        boolean added = MuteListStore.INSTANCE.mute(clientName, username);
         if (added) {
-            saveMuteList();
             LoggerUtil.INSTANCE.info(clientName + " muted user: " + username);
             notifyUserOfMuteStatus(username, true);
         }
@@ -272,9 +322,8 @@ public class ServerThread extends BaseServerThread {
     }
     
     public boolean removeMutedUser(String username) {
-        boolean removed = mutedUsers.remove(username);
+        boolean removed = MuteListStore.INSTANCE.unmute(clientName, username);
         if (removed) {
-            saveMuteList();
             LoggerUtil.INSTANCE.info(clientName + " unmuted user: " + username);
             notifyUserOfMuteStatus(username, false);
         }
@@ -289,29 +338,4 @@ public class ServerThread extends BaseServerThread {
     public boolean isUserMuted(String username) {
         return mutedUsers.contains(username);
     }
-    
-    
-    //st278 and 07/28/24
-    private void saveMuteList() {
-        String fileName = MUTE_LIST_DIRECTORY + File.separator + clientName + ".txt";
-        try {
-            Files.write(Paths.get(fileName), mutedUsers);
-            LoggerUtil.INSTANCE.info("Saved mute list for " + clientName);
-        } catch (IOException e) {
-            LoggerUtil.INSTANCE.severe("Error saving mute list for " + clientName, e);
-        }
-    }
-
-    //st278 and 07/27/24
-    private void loadMuteList() {
-    String fileName = MUTE_LIST_DIRECTORY + File.separator + clientName + ".txt";
-        try {
-            List<String> lines = Files.readAllLines(Paths.get(fileName));
-            mutedUsers.clear(); // Clear existing mute list before loading
-            mutedUsers.addAll(lines);
-            LoggerUtil.INSTANCE.info("Loaded mute list for " + clientName);
-        } catch (IOException e) {
-            LoggerUtil.INSTANCE.info("No existing mute list found for " + clientName + ". Starting with an empty list.");
-        }
-    }
 }
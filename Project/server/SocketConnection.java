@@ -0,0 +1,310 @@
+package Project.Server;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import Project.Common.FrameCodec;
+import Project.Common.LoggerUtil;
+import Project.Common.Payload;
+import Project.Common.PayloadType;
+
+/**
+ * Blocking Socket transport used by the thread-per-connection engines
+ * (platform or virtual threads).
+ * <p>
+ * Writes go through a bounded {@link OutboundQueue} drained by a dedicated
+ * writer thread, so a slow client only ever stalls its own writer and never
+ * the thread that is broadcasting to it.
+ * </p>
+ * <p>
+ * The writer coalesces whatever is queued into a single socket write. It
+ * flushes as soon as the queue drains, except while a burst is in progress
+ * (the previous write carried more than one frame) where it lingers up to a
+ * small latency budget for more frames to join the batch.
+ * </p>
+ * <p>
+ * A client from before framing is recognized by its first 4 bytes
+ * ({@link FrameCodec#LEGACY_STREAM_MAGIC}); it's read with an
+ * ObjectInputStream and sent frames rewritten by
+ * {@link FrameCodec#toLegacyStream(byte[])}.
+ * </p>
+ */
+public class SocketConnection implements ClientConnection {
+    // kept small since idle connections in virtual thread mode can number in the
+    // tens of thousands; frames are written whole so output needs no buffer
+    private static final int READ_BUFFER_SIZE = 1024;
+    // -Dchat.flush.maxBytes / -Dchat.flush.lingerMicros
+    private static final int MAX_BATCH_BYTES = Integer.getInteger("chat.flush.maxBytes", 64 * 1024);
+    private static final long LINGER_NANOS = TimeUnit.MICROSECONDS
+            .toNanos(Integer.getInteger("chat.flush.lingerMicros", 200));
+    private static final int MAX_BATCH_FRAMES = 64;
+    // -Dchat.close.drainMs, how long close() lets the writer finish before the
+    // socket is closed under it (a stalled peer would block its write forever)
+    private static final long DRAIN_TIMEOUT_MS = Long.getLong("chat.close.drainMs", 2000);
+    // only fires the timeouts, closing a socket doesn't block
+    private static final ScheduledExecutorService DRAIN_TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "socket-drain-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Socket socket;
+    private final OutputStream out;
+    private final DataInputStream in;
+    private final OutboundQueue queue = new OutboundQueue();
+    // writer thread only
+    private final byte[][] batchFrames = new byte[MAX_BATCH_FRAMES][];
+    private final PayloadType[] batchTypes = new PayloadType[MAX_BATCH_FRAMES];
+    private volatile boolean isBroken = false;
+    private volatile boolean isLegacyStream = false;
+    private boolean isFirstRead = true; // reader thread only
+    private ObjectInputStream legacyIn; // reader thread only, set for unframed clients
+    private Thread writer;
+    private volatile ScheduledFuture<?> drainTimeout;
+
+    public SocketConnection(Socket socket) throws IOException {
+        this.socket = socket;
+        this.out = socket.getOutputStream();
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), READ_BUFFER_SIZE));
+    }
+
+    /**
+     * Starts the writer that drains the outbound queue
+     *
+     * @param builder e.g. Thread.ofPlatform() or Thread.ofVirtual()
+     */
+    public void startWriter(Thread.Builder builder) {
+        writer = builder.start(this::writeLoop);
+    }
+
+    @Override
+    public OutboundQueue getQueue() {
+        return queue;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Blocks until the next full frame arrives
+     *
+     * @return the decoded Payload
+     * @throws IOException when the socket is closed or the frame is invalid
+     */
+    public Payload read() throws IOException {
+        if (legacyIn != null) {
+            return readLegacy();
+        }
+        if (isFirstRead) {
+            isFirstRead = false;
+            in.mark(FrameCodec.HEADER_SIZE);
+            if (in.readInt() == FrameCodec.LEGACY_STREAM_MAGIC) {
+                in.reset();
+                startLegacyStream();
+                return readLegacy();
+            }
+            in.reset();
+        }
+        int length = in.readInt();
+        FrameCodec.checkLength(length);
+        byte[] body = new byte[length];
+        in.readFully(body);
+        Payload payload = FrameCodec.decode(body, 0, length);
+        ServerMetrics.INSTANCE.recordReceived(payload.getPayloadType(), FrameCodec.HEADER_SIZE + length);
+        return payload;
+    }
+
+    /**
+     * Answers an unframed client's stream header with ours; its
+     * ObjectInputStream won't let it send anything until it has it. Nothing can
+     * be queued yet (the server only answers a client's first payload), so
+     * this doesn't race the writer.
+     */
+    private void startLegacyStream() throws IOException {
+        LoggerUtil.INSTANCE.info("Client sent an unframed object stream, using the legacy protocol");
+        isLegacyStream = true;
+        out.write(FrameCodec.legacyStreamHeader());
+        legacyIn = new ObjectInputStream(in);
+    }
+
+    /**
+     * Reads the next object off an unframed client's stream; its size isn't
+     * known so it's counted as 0 bytes
+     */
+    private Payload readLegacy() throws IOException {
+        Payload payload;
+        try {
+            payload = (Payload) legacyIn.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Stream did not contain a Payload", e);
+        }
+        ServerMetrics.INSTANCE.recordReceived(payload.getPayloadType(), 0);
+        return payload;
+    }
+
+    @Override
+    public boolean write(byte[] frame, PayloadType type) {
+        if (isBroken) {
+            return false;
+        }
+        switch (queue.offer(frame, type)) {
+            case QUEUED:
+            case DROPPED:
+                return true;
+            case OVERFLOW:
+                LoggerUtil.INSTANCE.warning(String.format(
+                        "Outbound queue overflow (%s frames), disconnecting slow consumer", queue.size()));
+                abort();
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            OutboundQueue.QueuedFrame first;
+            boolean isBursting = false;
+            while ((first = queue.take()) != null) {
+                isBursting = writeBatch(first, isBursting) > 1;
+            }
+        } catch (IOException e) {
+            LoggerUtil.INSTANCE.fine("Socket write failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            isBroken = true;
+            queue.clear();
+            closeSocket();
+            ScheduledFuture<?> timeout = drainTimeout;
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Collects frames behind the first one and writes them with one call
+     *
+     * @param first      frame already taken from the queue
+     * @param shouldWait linger up to the latency budget once the queue is empty
+     * @return number of frames written
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private int writeBatch(OutboundQueue.QueuedFrame first, boolean shouldWait)
+            throws IOException, InterruptedException {
+        byte[][] frames = batchFrames;
+        PayloadType[] types = batchTypes;
+        frames[0] = outgoing(first);
+        types[0] = first.getType();
+        int size = frames[0].length;
+        int count = 1;
+        long deadline = first.getEnqueuedNanos() + LINGER_NANOS;
+        while (count < MAX_BATCH_FRAMES && size < MAX_BATCH_BYTES) {
+            OutboundQueue.QueuedFrame next = queue.poll();
+            if (next == null && shouldWait) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining > 0) {
+                    next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            frames[count] = outgoing(next);
+            types[count] = next.getType();
+            size += frames[count++].length;
+        }
+        if (count == 1) {
+            out.write(frames[0]);
+        } else {
+            byte[] batch = new byte[size];
+            int offset = 0;
+            for (int i = 0; i < count; i++) {
+                System.arraycopy(frames[i], 0, batch, offset, frames[i].length);
+                offset += frames[i].length;
+            }
+            out.write(batch);
+        }
+        FlushStats.INSTANCE.record(count, size, first.getEnqueuedNanos());
+        for (int i = 0; i < count; i++) {
+            ServerMetrics.INSTANCE.recordSent(types[i], frames[i].length);
+        }
+        Arrays.fill(frames, 0, count, null);
+        Arrays.fill(types, 0, count, null);
+        return count;
+    }
+
+    /**
+     * @return the bytes to write for a queued frame
+     */
+    private byte[] outgoing(OutboundQueue.QueuedFrame entry) throws IOException {
+        return isLegacyStream ? FrameCodec.toLegacyStream(entry.getFrame()) : entry.getFrame();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !isBroken && !queue.isClosed() && !socket.isClosed();
+    }
+
+    /**
+     * Stops accepting frames, lets the writer send what is already queued and
+     * then close the socket. The read side is shut down right away so the
+     * blocking reader exits. If the writer is still going after
+     * -Dchat.close.drainMs the socket is closed anyway, which also fails a
+     * write stuck on a peer that stopped reading.
+     */
+    @Override
+    public void close() {
+        queue.close();
+        if (writer == null) {
+            closeSocket();
+            return;
+        }
+        try {
+            socket.shutdownInput();
+        } catch (IOException e) {
+            // already closed
+        }
+        if (drainTimeout == null && !socket.isClosed()) {
+            drainTimeout = DRAIN_TIMER.schedule(this::onDrainTimeout, DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void onDrainTimeout() {
+        if (!socket.isClosed()) {
+            LoggerUtil.INSTANCE.fine(String.format("Writer didn't drain within %sms of close, closing the socket",
+                    DRAIN_TIMEOUT_MS));
+            abort();
+        }
+    }
+
+    /**
+     * Drops anything queued and closes immediately
+     */
+    public void abort() {
+        isBroken = true;
+        queue.clear();
+        closeSocket();
+    }
+
+    private void closeSocket() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // already closed
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package Project.Server;
+
+import java.util.Arrays;
+
+/**
+ * Single pass markup to HTML converter for chat messages.
+ * <p>
+ * Supports the same markup the Room has always accepted:
+ * </p>
+ * <ul>
+ * <li>**bold**</li>
+ * <li>*italic*</li>
+ * <li>_underline_</li>
+ * <li>#r red r#, #g green g#, #b blue b#</li>
+ * <li>#RRGGBB hex color#</li>
+ * </ul>
+ * <p>
+ * It replaces a chain of seven String.replaceAll calls: the message is walked
+ * once into a single StringBuilder and nothing is compiled per call. The
+ * output is the same as the regex chain's, including its quirks: pairs never
+ * span a line break, unpaired markers are left as typed and an unpaired "**"
+ * counts as two italic markers. Project.Bench.TextFormattingBench checks this
+ * against the old implementation.
+ * </p>
+ */
+public final class TextFormatter {
+    private static final int BOLD = 0;
+    private static final int ITALIC = 1;
+    private static final int UNDERLINE = 2;
+    private static final int RED = 3;
+    private static final int GREEN = 4;
+    private static final int BLUE = 5;
+    private static final int HEX = 6;
+    private static final int MARKUP_TYPES = 7;
+
+    private static final String[] OPEN_TAGS = { "<b>", "<i>", "<u>", "<font color='red'>",
+            "<font color='green'>", "<font color='blue'>", null };
+    private static final String[] CLOSE_TAGS = { "</b>", "</i>", "</u>", "</font>", "</font>", "</font>",
+            "</font>" };
+    private static final char[] CODES = { 0, 0, 0, 'r', 'g', 'b' };
+    private static final int HEX_DIGITS = 6;
+
+    private TextFormatter() {
+    }
+
+    /**
+     * Converts markup in the message to HTML
+     *
+     * @param message raw chat text
+     * @return formatted text (the same instance if there's no markup)
+     */
+    public static String format(String message) {
+        if (!hasMarkup(message)) {
+            return message;
+        }
+        int length = message.length();
+        // named colors are paired up front since their markers can share a '#'
+        // with each other (e.g. "g#r") and red wins over green over blue
+        byte[] colorMarks = message.indexOf('#') >= 0 ? pairColors(message) : null;
+        StringBuilder out = new StringBuilder(length + 32);
+        // where each open marker was written (still as literal text) in out, -1 if
+        // none; markers are only swapped for tags once their closer shows up
+        int[] openAt = new int[MARKUP_TYPES];
+        Arrays.fill(openAt, -1);
+        int boldSearchedTo = -1; // no "**" closer between here and this index
+        int i = 0;
+        while (i < length) {
+            char c = message.charAt(i);
+            int mark = colorMarks == null ? 0 : colorMarks[i];
+            if (mark != 0) {
+                int color = mark > 0 ? mark : -mark;
+                if (mark > 0) {
+                    openAt[color] = out.length();
+                    out.append(message, i, i + 2);
+                } else {
+                    close(out, openAt, color, OPEN_TAGS[color]);
+                }
+                i += 2;
+                continue;
+            }
+            switch (c) {
+                case '*':
+                    boolean isBold = i + 1 < length && message.charAt(i + 1) == '*';
+                    if (isBold && openAt[BOLD] < 0) {
+                        // an unpaired "**" is just two italic markers
+                        if (boldSearchedTo < i) {
+                            int closer = findBoldCloser(message, i + 2);
+                            boldSearchedTo = closer < 0 ? lineEnd(message, i) : i;
+                            isBold = closer >= 0;
+                        } else {
+                            isBold = false;
+                        }
+                    }
+                    if (isBold) {
+                        toggle(out, openAt, BOLD, "**");
+                        i += 2;
+                    } else {
+                        toggle(out, openAt, ITALIC, "*");
+                        i++;
+                    }
+                    break;
+                case '_':
+                    toggle(out, openAt, UNDERLINE, "_");
+                    i++;
+                    break;
+                case '#':
+                    i = onHash(message, i, out, openAt, colorMarks);
+                    break;
+                case '\n':
+                case '\r':
+                case '\u0085':
+                case '\u2028':
+                case '\u2029':
+                    // pairs never span lines, whatever is still open stays literal
+                    Arrays.fill(openAt, -1);
+                    out.append(c);
+                    i++;
+                    break;
+                default:
+                    out.append(c);
+                    i++;
+                    break;
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Handles a '#' that isn't part of a named color: hex closer, hex opener or
+     * plain text
+     *
+     * @return index after whatever was consumed
+     */
+    private static int onHash(String message, int i, StringBuilder out, int[] openAt, byte[] colorMarks) {
+        if (openAt[HEX] >= 0) {
+            // the hex digits sit right after the marker in the output
+            int start = openAt[HEX];
+            String tag = "<font color='#" + out.substring(start + 1, start + 1 + HEX_DIGITS) + "'>";
+            close(out, openAt, HEX, tag);
+            return i + 1;
+        }
+        if (i + HEX_DIGITS < message.length() && isHexRun(message, i + 1, colorMarks)) {
+            openAt[HEX] = out.length();
+            out.append(message, i, i + 1 + HEX_DIGITS);
+            return i + 1 + HEX_DIGITS;
+        }
+        out.append('#');
+        return i + 1;
+    }
+
+    /**
+     * Pairs #r..r#, then #g..g#, then #b..b# the way the old chain of
+     * replaceAll calls did: leftmost opener, nearest closer on the same line,
+     * never reusing characters an earlier color claimed.
+     *
+     * @return per index: color type at an opener, minus the type at a closer,
+     *         0 otherwise
+     */
+    private static byte[] pairColors(String message) {
+        int length = message.length();
+        byte[] marks = new byte[length];
+        boolean[] claimed = new boolean[length];
+        for (int color = RED; color <= BLUE; color++) {
+            char code = CODES[color];
+            int i = 0;
+            while (i + 1 < length) {
+                if (!isMarker(message, claimed, i, '#', code)) {
+                    i++;
+                    continue;
+                }
+                int closer = -1;
+                int j = i + 2;
+                for (; j + 1 < length && !isLineBreak(message.charAt(j)); j++) {
+                    if (isMarker(message, claimed, j, code, '#')) {
+                        closer = j;
+                        break;
+                    }
+                }
+                if (closer < 0) {
+                    i = j + 1; // no closer on this line for any later opener either
+                    continue;
+                }
+                marks[i] = (byte) color;
+                marks[closer] = (byte) -color;
+                claimed[i] = claimed[i + 1] = claimed[closer] = claimed[closer + 1] = true;
+                i = closer + 2;
+            }
+        }
+        return marks;
+    }
+
+    private static boolean isMarker(String message, boolean[] claimed, int i, char first, char second) {
+        return message.charAt(i) == first && message.charAt(i + 1) == second && !claimed[i] && !claimed[i + 1];
+    }
+
+    /**
+     * @return index of the next "**" on the same line, or -1
+     */
+    private static int findBoldCloser(String message, int from) {
+        for (int i = from; i + 1 < message.length(); i++) {
+            char c = message.charAt(i);
+            if (isLineBreak(c)) {
+                return -1;
+            }
+            if (c == '*' && message.charAt(i + 1) == '*') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lineEnd(String message, int from) {
+        for (int i = from; i < message.length(); i++) {
+            if (isLineBreak(message.charAt(i))) {
+                return i;
+            }
+        }
+        return message.length();
+    }
+
+    private static void toggle(StringBuilder out, int[] openAt, int type, String marker) {
+        if (openAt[type] >= 0) {
+            close(out, openAt, type, OPEN_TAGS[type]);
+        } else {
+            openAt[type] = out.length();
+            out.append(marker);
+        }
+    }
+
+    /**
+     * Swaps the literal opener for its tag and appends the closing tag
+     */
+    private static void close(StringBuilder out, int[] openAt, int type, String openTag) {
+        int start = openAt[type];
+        int markerLength = markerLength(type);
+        out.replace(start, start + markerLength, openTag);
+        int shift = openTag.length() - markerLength;
+        for (int t = 0; t < MARKUP_TYPES; t++) {
+            if (openAt[t] > start) {
+                openAt[t] += shift;
+            }
+        }
+        openAt[type] = -1;
+        out.append(CLOSE_TAGS[type]);
+    }
+
+    private static int markerLength(int type) {
+        switch (type) {
+            case ITALIC:
+            case UNDERLINE:
+                return 1;
+            case HEX:
+                return 1 + HEX_DIGITS;
+            default:
+                return 2;
+        }
+    }
+
+    /**
+     * @return true if the 6 characters from the index are hex digits not
+     *         claimed by a named color
+     */
+    private static boolean isHexRun(String message, int from, byte[] colorMarks) {
+        for (int i = from; i < from + HEX_DIGITS; i++) {
+            char c = message.charAt(i);
+            if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F'))) {
+                return false;
+            }
+            // a closer's letter ("b#") or the letter after an opener's '#'
+            if (colorMarks[i] < 0 || (i > 0 && colorMarks[i - 1] > 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLineBreak(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    private static boolean hasMarkup(String message) {
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (c == '*' || c == '_' || c == '#') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
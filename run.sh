@@ -2,15 +2,23 @@
 # Convert input to lowercase
 input=$(echo "$2" | tr '[:upper:]' '[:lower:]')
 port=${3:-3000}  # Default port to 3000 if not provided
+mode=${4:-blocking} # Server engine: blocking, virtual or nio
 
 if [ "$input" = "server" ]; then
-    java $1.Server.Server $port
+    java $1.Server.Server $port $mode
 elif [ "$input" = "client" ]; then
     java $1.Client.Client
     # In Milestone3 changes Client to ClientUI
 elif [ "$input" = "ui" ]; then
 	java $1.Client.ClientUI
 	# Milestone 3's new entry point
+elif [ "$input" = "bench" ]; then
+	java $BENCH_OPTS $1.Bench.BenchSuite $3
+	# optional third argument filters cases by name, e.g. codec, format, fan-out
+	# BENCH_OPTS="-Dbench.out=baseline.csv" saves a baseline, -Dbench.baseline=baseline.csv compares
+elif [ "$input" = "loadgen" ]; then
+	java $LOADGEN_OPTS $1.LoadGen.LoadGen localhost $port
+	# LOADGEN_OPTS="-Dloadgen.clients=1000 -Dloadgen.rooms=10 -Dloadgen.rate=1000 -Dloadgen.duration=30"
 else
-    echo "Must specify client, server, or ui"
+    echo "Must specify client, server, ui, bench or loadgen"
 fi
\ No newline at end of file